@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.doclava.apicheck.ApiCheck;
+import com.google.doclava.apicheck.ApiInfo;
+import com.google.doclava.apicheck.ApiParseException;
+import com.google.doclava.apicheck.ApiSnapshot;
+
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the API files read by {@link SinceTagger}, {@link ArtifactTagger} and
+ * {@link FederationTagger} on a shared pool. Each file is parsed independently, so every
+ * tagger can queue all of its files up front and then apply the results one at a time in its
+ * own order.
+ */
+class ApiSpecLoader {
+  private static ExecutorService sExecutor = null;
+
+  /**
+   * Starts parsing {@code file} in the background, through its {@link ApiSnapshot} if
+   * snapshots are enabled.
+   */
+  static Future<ApiInfo> load(final String file) {
+    if (Doclava.apiSnapshots) {
+      return executor().submit(() -> ApiSnapshot.parseApi(file));
+    }
+    return executor().submit(() -> ApiCheck.parseApi(file));
+  }
+
+  /** Starts parsing the API file at {@code url} in the background. */
+  static Future<ApiInfo> load(final URL url) {
+    return executor().submit(() -> new ApiCheck().parseApi(url));
+  }
+
+  /**
+   * Waits for a file queued with {@link #load} and returns its API, rethrowing any failure as
+   * it would have been thrown by parsing the file directly.
+   */
+  static ApiInfo get(Future<ApiInfo> api) throws ApiParseException {
+    try {
+      return api.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiParseException("Interrupted while parsing API", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ApiParseException) {
+        throw (ApiParseException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ApiParseException("Error parsing API", (Exception) cause);
+    }
+  }
+
+  private static synchronized ExecutorService executor() {
+    if (sExecutor == null) {
+      sExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "doclava-api-loader");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return sExecutor;
+  }
+}
@@ -17,15 +17,16 @@
 package com.google.doclava;
 
 import com.google.clearsilver.jsilver.data.Data;
-import com.google.doclava.apicheck.ApiCheck;
 import com.google.doclava.apicheck.ApiInfo;
 import com.google.doclava.apicheck.ApiParseException;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Applies version information to the Doclava class model from apicheck XML files.
@@ -45,6 +46,7 @@ import java.util.Map;
 public class ArtifactTagger {
 
   private final Map<String, String> xmlToArtifact = new LinkedHashMap<>();
+  private final Map<String, Future<ApiInfo>> xmlToApi = new HashMap<>();
 
   /**
    * Specifies the apicheck XML file associated with an artifact.
@@ -58,21 +60,34 @@ public class ArtifactTagger {
     xmlToArtifact.put(file, mavenSpec);
   }
 
+  /**
+   * Starts parsing the XML files of every artifact in the background. Called by
+   * {@link #tagAll}; calling it earlier lets the parsing overlap with other work.
+   */
+  public void startLoading() {
+    for (String xmlFile : xmlToArtifact.keySet()) {
+      if (!xmlToApi.containsKey(xmlFile)) {
+        xmlToApi.put(xmlFile, ApiSpecLoader.load(xmlFile));
+      }
+    }
+  }
+
   /**
    * Tags the specified docs with artifact information.
    *
    * @param classDocs the docs to tag
    */
   public void tagAll(Collection<ClassInfo> classDocs) {
-    // Read through the XML files in order, applying their artifact information
-    // to the Javadoc models.
+    // The XML files are parsed concurrently, but their artifact information is
+    // applied to the Javadoc models in order.
+    startLoading();
     for (Map.Entry<String, String> artifactSpec : xmlToArtifact.entrySet()) {
       String xmlFile = artifactSpec.getKey();
       String artifactName = artifactSpec.getValue();
 
       ApiInfo specApi;
       try {
-        specApi = new ApiCheck().parseApi(xmlFile);
+        specApi = ApiSpecLoader.get(xmlToApi.remove(xmlFile));
       } catch (ApiParseException e) {
         StringWriter stackTraceWriter = new StringWriter();
         e.printStackTrace(new PrintWriter(stackTraceWriter));
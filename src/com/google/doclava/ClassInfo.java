@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -36,6 +37,7 @@ import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Scoped, Resolvable {
@@ -84,7 +86,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    */
   public ClassInfo(String qualifiedName) {
     super("", SourcePositionInfo.UNKNOWN);
-    mQualifiedName = qualifiedName;
+    mQualifiedName = Names.intern(qualifiedName);
     if (qualifiedName.lastIndexOf('.') != -1) {
       mName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
     } else {
@@ -107,7 +109,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
               isIncluded, qualifiedTypeName, isPrimitive, null);
 
       mName = name;
-      mQualifiedName = qualifiedName;
+      mQualifiedName = Names.intern(qualifiedName);
       mNameParts = name.split("\\.");
       mClass = cl;
   }
@@ -194,8 +196,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
 
   public void init2() {
     // calling this here forces the AttrTagInfo objects to be linked to the AttribtueInfo
-    // objects
-    selfAttributes();
+    // objects. Comments that are not parsed have no @attr tags, so there is nothing to link
+    // when the model only has signatures.
+    if (Doclava.parseComments()) {
+      selfAttributes();
+    }
   }
 
   public void init3(ArrayList<TypeInfo> types, ArrayList<ClassInfo> realInnerClasses) {
@@ -839,9 +844,87 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * listed before concrete classes.
    */
   public List<ClassInfo> gatherAncestorClasses() {
-    LinkedList<ClassInfo> classes = gatherAncestorClasses(new LinkedList<>());
-    classes.removeLast();
-    return classes;
+    if (mAncestorClasses == null) {
+      LinkedList<ClassInfo> classes = gatherAncestorClasses(new LinkedList<>());
+      classes.removeLast();
+      mAncestorClasses = Collections.unmodifiableList(new ArrayList<ClassInfo>(classes));
+    }
+    return mAncestorClasses;
+  }
+
+  /**
+   * Returns the non-static methods of {@link #gatherAncestorClasses} that {@code method}'s
+   * name and signature match, in the order of that list.
+   */
+  List<MethodInfo> ancestorMethods(MethodInfo method) {
+    if (mAncestorMethods == null) {
+      HashMap<String, List<MethodInfo>> index = new HashMap<String, List<MethodInfo>>();
+      Set<ClassInfo> seen = Collections.newSetFromMap(new IdentityHashMap<ClassInfo, Boolean>());
+      for (ClassInfo clazz : gatherAncestorClasses()) {
+        // a class listed again can only repeat what it matched the first time
+        if (!seen.add(clazz)) {
+          continue;
+        }
+        for (MethodInfo m : clazz.getExhaustiveMethods()) {
+          if (!m.isStatic()) {
+            index.computeIfAbsent(m.name() + m.signature(), k -> new ArrayList<MethodInfo>(2))
+                .add(m);
+          }
+        }
+      }
+      mAncestorMethods = index;
+    }
+    List<MethodInfo> methods = mAncestorMethods.get(method.name() + method.signature());
+    return methods != null ? methods : Collections.<MethodInfo>emptyList();
+  }
+
+  /**
+   * Returns the interfaces searched for the methods this class's methods override: its
+   * interfaces, then each of theirs in turn, without repeats.
+   */
+  List<ClassInfo> interfaceSearchOrder() {
+    if (mInterfaceSearchOrder == null) {
+      mInterfaceSearchOrder = searchOrder(null, interfaces());
+    }
+    return mInterfaceSearchOrder;
+  }
+
+  /**
+   * Returns the classes searched for the methods this class's methods really override, ignoring
+   * hidden classes: an abstract superclass, then its real interfaces and theirs in turn.
+   */
+  List<ClassInfo> realOverrideSearchOrder() {
+    if (mRealOverrideSearchOrder == null) {
+      ClassInfo superclass = mRealSuperclass != null && mRealSuperclass.isAbstract()
+          ? mRealSuperclass : null;
+      mRealOverrideSearchOrder = searchOrder(superclass, mRealInterfaces);
+    }
+    return mRealOverrideSearchOrder;
+  }
+
+  private static List<ClassInfo> searchOrder(ClassInfo first, List<ClassInfo> interfaces) {
+    ArrayList<ClassInfo> order = new ArrayList<ClassInfo>();
+    Set<ClassInfo> seen = Collections.newSetFromMap(new IdentityHashMap<ClassInfo, Boolean>());
+    if (first != null) {
+      addNew(first, order, seen);
+    }
+    for (ClassInfo iface : interfaces) {
+      addNew(iface, order, seen);
+    }
+    for (ClassInfo iface : interfaces) {
+      if (iface != null) {
+        for (ClassInfo i : iface.interfaceSearchOrder()) {
+          addNew(i, order, seen);
+        }
+      }
+    }
+    return Collections.unmodifiableList(order);
+  }
+
+  private static void addNew(ClassInfo cl, List<ClassInfo> list, Set<ClassInfo> seen) {
+    if (cl != null && seen.add(cl)) {
+      list.add(cl);
+    }
   }
 
   private LinkedList<ClassInfo> gatherAncestorClasses(LinkedList<ClassInfo> classes) {
@@ -1252,7 +1335,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   public void makeShortDescrHDF(Data data, String base) {
     mTypeInfo.makeHDF(data, base + ".type");
     data.setValue(base + ".kind", this.kind());
-    TagInfo.makeHDF(data, base + ".shortDescr", this.firstSentenceTags());
+    makeFirstSentenceHDF(data, base + ".shortDescr");
     TagInfo.makeHDF(data, base + ".deprecated", deprecatedTags());
     data.setValue(base + ".since", getSince());
     if (isDeprecated()) {
@@ -1780,7 +1863,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ClassInfo findClass(String className) {
-    return Converter.obtainClass(mClass.findClass(className));
+    return Converter.withJavadoc(() -> Converter.obtainClass(mClass.findClass(className)));
   }
 
   public ClassInfo findInnerClass(String className) {
@@ -1789,26 +1872,28 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     // we see if there are any periods in className, and start searching
     // from there.
     String[] nodes = className.split("\\.");
-    ClassDoc cl = mClass;
-
-    int N = nodes.length;
-    for (int i = 0; i < N; ++i) {
-      final String n = nodes[i];
-      if (n.isEmpty() && i == 0) {
-        // We skip over an empty classname component if it's at location 0. This is
-        // to deal with names like ".Inner". java7 will return a bogus ClassInfo when
-        // we call "findClass("") and the next iteration of the loop will throw a
-        // runtime exception.
-        continue;
-      }
+    return Converter.withJavadoc(() -> {
+      ClassDoc cl = mClass;
+
+      int N = nodes.length;
+      for (int i = 0; i < N; ++i) {
+        final String n = nodes[i];
+        if (n.isEmpty() && i == 0) {
+          // We skip over an empty classname component if it's at location 0. This is
+          // to deal with names like ".Inner". java7 will return a bogus ClassInfo when
+          // we call "findClass("") and the next iteration of the loop will throw a
+          // runtime exception.
+          continue;
+        }
 
-      cl = cl.findClass(n);
-      if (cl == null) {
-        return null;
+        cl = cl.findClass(n);
+        if (cl == null) {
+          return null;
+        }
       }
-    }
 
-    return Converter.obtainClass(cl);
+      return Converter.obtainClass(cl);
+    });
   }
 
   public FieldInfo findField(String name) {
@@ -1912,7 +1997,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       return true;
     } else if (o instanceof ClassInfo) {
       final ClassInfo c = (ClassInfo) o;
-      return mQualifiedName.equals(c.mQualifiedName);
+      // qualified names are interned, see Names
+      return mQualifiedName == c.mQualifiedName;
     } else {
       return false;
     }
@@ -1923,6 +2009,14 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     return mQualifiedName.hashCode();
   }
 
+  /**
+   * A number unique to this instance, counting up from zero in the order classes are created,
+   * for keeping sets of classes as bits. Instances with the same name have different IDs.
+   */
+  public int id() {
+    return mId;
+  }
+
   public void setReasonIncluded(String reason) {
     mReasonIncluded = reason;
   }
@@ -1984,6 +2078,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   private ArrayList<ClassTypePair> mSuperclassesWithTypes;
   private ArrayList<ClassTypePair> mInterfacesWithTypes;
   private ArrayList<ClassTypePair> mAllInterfacesWithTypes;
+  // Worked out on first use, once the hierarchy is complete.
+  private List<ClassInfo> mAncestorClasses;
+  private HashMap<String, List<MethodInfo>> mAncestorMethods;
+  private List<ClassInfo> mInterfaceSearchOrder;
+  private List<ClassInfo> mRealOverrideSearchOrder;
   private ArrayList<MethodInfo> mConstructors;
   private ArrayList<ClassInfo> mRealInnerClasses;
   private ArrayList<MethodInfo> mSelfMethods;
@@ -1997,6 +2096,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   private Boolean mRemoved = null;
   private Boolean mCheckLevel = null;
   private String mReasonIncluded;
+  private static final AtomicInteger sNextId = new AtomicInteger();
+  private final int mId = sNextId.getAndIncrement();
   private ArrayList<MethodInfo> mNonWrittenConstructors;
   private boolean mIsDeprecated;
 
@@ -2005,6 +2106,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   private HashMap<String, MethodInfo> mApiCheckMethods = new HashMap<String, MethodInfo>();
   private HashMap<String, FieldInfo> mApiCheckFields = new HashMap<String, FieldInfo>();
   private HashMap<String, FieldInfo> mApiCheckEnumConstants = new HashMap<String, FieldInfo>();
+  private long mApiDigest;
 
   // Resolutions
   private ArrayList<Resolution> mResolutions;
@@ -2085,6 +2187,26 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     mSuperclass = superclass;
   }
 
+  /**
+   * A digest of this class's declaration in the API text file it was read from, or 0 if it
+   * wasn't read from one.
+   */
+  public long apiDigest() {
+    return mApiDigest;
+  }
+
+  public void setApiDigest(long digest) {
+    mApiDigest = digest;
+  }
+
+  /**
+   * Whether {@code cl} was read from an API file with exactly the same declaration as this
+   * class, in which case {@link #isConsistent} would find nothing to report.
+   */
+  public boolean hasSameApi(ClassInfo cl) {
+    return cl != null && mApiDigest != 0 && mApiDigest == cl.mApiDigest;
+  }
+
   public Map<String, MethodInfo> allConstructorsMap() {
     return mApiCheckConstructors;
   }
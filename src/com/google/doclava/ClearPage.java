@@ -19,13 +19,17 @@ package com.google.doclava;
 import com.google.clearsilver.jsilver.JSilver;
 import com.google.clearsilver.jsilver.data.Data;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
@@ -113,39 +117,162 @@ public class ClearPage {
       filename = outputDir + "/" + filename;
     }
 
-    int i = 0;
-    if (!htmlDirs.isEmpty()) {
-        for (String dir : htmlDirs) {
-          data.setValue("hdf.loadpaths." + i, dir);
-          i++;
-        }
-    }
+    List<String> loadPaths = new ArrayList<String>(htmlDirs);
     if (mTemplateDirSet) {
-      for (String dir : mTemplateDirs) {
-        data.setValue("hdf.loadpaths." + i, dir);
-        i++;
-      }
+      loadPaths.addAll(mTemplateDirs);
     } else {
-      data.setValue("hdf.loadpaths." + i, "templates");
+      loadPaths.add("templates");
+    }
+    for (int i = 0; i < loadPaths.size(); i++) {
+      data.setValue("hdf.loadpaths." + i, loadPaths.get(i));
     }
 
     File file = new File(outputFilename(filename));
 
+    String fingerprint = null;
+    if (PageManifest.isEnabled()) {
+      fingerprint = PageManifest.fingerprint(data, templ, loadPaths);
+      if (PageManifest.isUpToDate(file, fingerprint)) {
+        return;
+      }
+    }
+
     ensureDirectory(file);
-    Writer stream = null;
+    PageWriter stream = sPageWriter.get();
     try {
-      stream = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
-      String rendered = cs.render(templ, data);
-      stream.write(rendered, 0, rendered.length());
+      stream.open(file);
+      TemplateCache.render(cs, templ, data, stream);
+      stream.close();
+      if (fingerprint != null) {
+        PageManifest.pageWritten(file, fingerprint);
+      }
     } catch (IOException e) {
       System.out.println("error: " + e.getMessage() + "; when writing file: " + filename);
     } finally {
-      if (stream != null) {
+      try {
+        stream.close();
+      } catch (IOException e) {}
+    }
+  }
+
+  private static final ThreadLocal<PageWriter> sPageWriter = new ThreadLocal<PageWriter>() {
+    @Override
+    protected PageWriter initialValue() {
+      return new PageWriter();
+    }
+  };
+
+  /**
+   * A UTF-8 {@link Writer} that templates are rendered into directly, instead of into an
+   * intermediate String. Its char and byte buffers are allocated once per thread and reused
+   * for every page, so the memory needed to write a page does not depend on the page's size.
+   */
+  private static class PageWriter extends Writer {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer mChars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer mBytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private OutputStream mOut;
+
+    public void open(File file) throws IOException {
+      mOut = new FileOutputStream(file);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      if (!mChars.hasRemaining()) {
+        encode(false);
+      }
+      mChars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = Math.min(len, mChars.remaining());
+        mChars.put(cbuf, off, n);
+        off += n;
+        len -= n;
+        if (!mChars.hasRemaining()) {
+          encode(false);
+        }
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = Math.min(len, mChars.remaining());
+        int pos = mChars.position();
+        str.getChars(off, off + n, mChars.array(), mChars.arrayOffset() + pos);
+        mChars.position(pos + n);
+        off += n;
+        len -= n;
+        if (!mChars.hasRemaining()) {
+          encode(false);
+        }
+      }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+      String s = String.valueOf(csq);
+      write(s, 0, s.length());
+      return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      encode(false);
+      drain();
+      mOut.flush();
+    }
+
+    /**
+     * Finishes the current page. The writer may be opened again afterwards, even if this
+     * throws.
+     */
+    @Override
+    public void close() throws IOException {
+      if (mOut == null) {
+        return;
+      }
+      try {
+        encode(true);
+        drain();
+      } finally {
         try {
-          stream.close();
-        } catch (IOException e) {}
+          mOut.close();
+        } finally {
+          mOut = null;
+          mEncoder.reset();
+          mChars.clear();
+          mBytes.clear();
+        }
       }
     }
+
+    // Encodes the buffered chars, leaving behind at most a dangling high surrogate.
+    private void encode(boolean endOfInput) throws IOException {
+      mChars.flip();
+      while (mEncoder.encode(mChars, mBytes, endOfInput).isOverflow()) {
+        drain();
+      }
+      if (endOfInput) {
+        while (mEncoder.flush(mBytes).isOverflow()) {
+          drain();
+        }
+      }
+      mChars.compact();
+    }
+
+    private void drain() throws IOException {
+      mOut.write(mBytes.array(), mBytes.arrayOffset(), mBytes.position());
+      mBytes.clear();
+    }
   }
 
   // recursively create the directories to the output
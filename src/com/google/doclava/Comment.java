@@ -16,17 +16,12 @@
 
 package com.google.doclava;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 public class Comment {
-  static final Pattern FIRST_SENTENCE =
-      Pattern.compile("((.*?)\\.)[ \t\r\n\\<](.*)", Pattern.DOTALL);
-
   private static final Set<String> KNOWN_TAGS = new HashSet<String>(Arrays.asList(new String[] {
           "@apiNote",
           "@author",
@@ -55,8 +50,19 @@ public class Comment {
   public Comment(String text, ContainerInfo base, SourcePositionInfo sp) {
     mText = text;
     mBase = base;
-    // sp now points to the end of the text, not the beginning!
-    mPosition = SourcePositionInfo.findBeginning(sp, text);
+    mEndPosition = sp;
+  }
+
+  /**
+   * Returns where the comment starts. Only parsing needs it, so it is worked out on first use
+   * rather than for every comment.
+   */
+  private SourcePositionInfo position() {
+    if (mPosition == null && mEndPosition != null) {
+      // sp now points to the end of the text, not the beginning!
+      mPosition = SourcePositionInfo.findBeginning(mEndPosition, mText);
+    }
+    return mPosition;
   }
 
   private void parseCommentTags(String text) {
@@ -68,44 +74,35 @@ public class Comment {
           return;
       }
 
-      text = text.substring(i-1);
-      length = text.length();
+      // the comment starts at its first non-whitespace character; ranges below are into text
+      int from = i-1;
 
-      if ("".equals(text)) {
-          return;
-      }
-
-      int start = 0;
-      int end = findStartOfBlock(text, start);
+      int start = from;
+      int end = findStartOfBlock(text, start, from);
 
 
       // possible scenarios
       //    main and block(s)
       //    main only (end == -1)
-      //    block(s) only (end == 0)
-
-      switch (end) {
-          case -1: // main only
-              parseMainDescription(text, start, length);
-              return;
-          case 0: // block(s) only
-              break;
-          default: // main and block
+      //    block(s) only (end == from)
 
-              // find end of main because end is really the beginning of @
-              parseMainDescription(text, start, findEndOfMainOrBlock(text, start, end));
-              break;
+      if (end == -1) { // main only
+          parseMainDescription(text, start, length);
+          return;
+      } else if (end != from) { // main and block
+          // find end of main because end is really the beginning of @
+          parseMainDescription(text, start, findEndOfMainOrBlock(text, start, end));
       }
 
       // parse blocks
       for (start = end; start < length; start = end) {
-          end = findStartOfBlock(text, start+1);
+          end = findStartOfBlock(text, start+1, from);
 
           if (end == -1) {
-              parseBlock(text, start, length);
+              parseBlock(text, start, length, from);
               break;
           } else {
-              parseBlock(text, start, findEndOfMainOrBlock(text, start, end));
+              parseBlock(text, start, findEndOfMainOrBlock(text, start, end), from);
           }
       }
 
@@ -129,13 +126,13 @@ public class Comment {
           return;
       }
 
-      SourcePositionInfo pos = SourcePositionInfo.add(mPosition, mText, 0);
+      SourcePositionInfo pos = SourcePositionInfo.add(position(), mText, 0);
       while (start < end) {
           int startOfInlineTag = findStartIndexOfInlineTag(mainDescription, start, end);
 
           // if there are no more tags
           if (startOfInlineTag == -1) {
-              tag(null, mainDescription.substring(start, end), true, pos);
+              scanned(-1, -1, start, end, true, pos);
               return;
           }
 
@@ -145,14 +142,14 @@ public class Comment {
           // if there was only beginning tag
           if (endOfInlineTag == -1) {
               // parse all of main as one tag
-              tag(null, mainDescription.substring(start, end), true, pos);
+              scanned(-1, -1, start, end, true, pos);
               return;
           }
 
           endOfInlineTag++; // add one to make it a proper ending index
 
           // do first part without an inline tag - ie, just plaintext
-          tag(null, mainDescription.substring(start, startOfInlineTag), true, pos);
+          scanned(-1, -1, start, startOfInlineTag, true, pos);
 
           // parse the rest of this section, the inline tag
           parseInlineTag(mainDescription, startOfInlineTag, endOfInlineTag, pos);
@@ -199,7 +196,7 @@ public class Comment {
           // if this tag has no value, just return with tag name only
           if (c == '}') {
               // TODO - should value be "" or null?
-              tag(text.substring(start+1, end), null, true, pos);
+              scanned(start+1, end, -1, -1, true, pos);
               return;
           }
           c = text.charAt(index++);
@@ -220,9 +217,7 @@ public class Comment {
 
       // +1 to get rid of opening brace and -1 to get rid of closing brace
       // maybe i wanna make this more elegant
-      String tagName = text.substring(start+1, endOfFirstPart);
-      String tagText = text.substring(startOfSecondPart, end-1);
-      tag(tagName, tagText, true, pos);
+      scanned(start+1, endOfFirstPart, startOfSecondPart, end-1, true, pos);
   }
 
 
@@ -231,10 +226,11 @@ public class Comment {
    * no more starts.
    * @param text The String to search
    * @param start the index of the String to start searching
+   * @param from the index the comment starts at
    * @return The index of the start of a new block comment or -1 if there are
    * no more starts.
    */
-  private int findStartOfBlock(String text, int start) {
+  private int findStartOfBlock(String text, int start, int from) {
       // how to detect we're at a new @
       //       if the chars to the left of it are \r or \n, we're at one
       //       if the chars to the left of it are ' ' or \t, keep looking
@@ -243,7 +239,7 @@ public class Comment {
 
       // no @ in text or index at first position
       if (index == -1 ||
-              (index == 0 && text.length() > 1 && !isWhitespaceChar(text.charAt(index+1)))) {
+              (index == from && text.length() > from+1 && !isWhitespaceChar(text.charAt(index+1)))) {
           return index;
       }
 
@@ -251,7 +247,7 @@ public class Comment {
 
       int i = index-1; // start at the character immediately to the left of @
       char c;
-      while (i >= 0) {
+      while (i >= from) {
           c = text.charAt(i--);
 
           // found a new block comment because we're at the beginning of a line
@@ -284,8 +280,9 @@ public class Comment {
       return index;
   }
 
-  private void parseBlock(String text, int startOfBlock, int endOfBlock) {
-      SourcePositionInfo pos = SourcePositionInfo.add(mPosition, mText, startOfBlock);
+  private void parseBlock(String text, int startOfBlock, int endOfBlock, int from) {
+      // block positions have always been counted from where the comment starts
+      SourcePositionInfo pos = SourcePositionInfo.add(position(), mText, startOfBlock - from);
       int index = startOfBlock;
 
       for (char c = text.charAt(index);
@@ -297,8 +294,8 @@ public class Comment {
       int endOfFirstPart = index-1;
       if (index == endOfBlock) {
           // TODO - should value be null or ""
-          tag(text.substring(startOfBlock,
-                  findEndOfMainOrBlock(text, startOfBlock, index)), "", false, pos);
+          scanned(startOfBlock, findEndOfMainOrBlock(text, startOfBlock, index),
+                  index, index, false, pos);
           return;
       }
 
@@ -307,8 +304,7 @@ public class Comment {
       while (index < endOfBlock && isWhitespaceChar(text.charAt(index++))) {}
       int startOfSecondPart = index-1;
 
-      tag(text.substring(startOfBlock, endOfFirstPart),
-              text.substring(startOfSecondPart, endOfBlock), false, pos);
+      scanned(startOfBlock, endOfFirstPart, startOfSecondPart, endOfBlock, false, pos);
   }
 
   private boolean isWhitespaceChar(char c) {
@@ -322,6 +318,59 @@ public class Comment {
       return false;
   }
 
+  /**
+   * Notes a tag whose name and text are at the given ranges of the comment text. A start of -1
+   * means there is no name (plain text) or no text.
+   */
+  private void scanned(int nameStart, int nameEnd, int textStart, int textEnd, boolean isInline,
+      SourcePositionInfo pos) {
+    mScannedTags.add(new ScannedTag(nameStart, nameEnd, textStart, textEnd, isInline, pos));
+  }
+
+  /**
+   * Splits the comment text into tags without building them. This only reads the text, so
+   * {@link Converter} scans comments on several threads at once; building the tags resolves
+   * links and reports errors, and happens when the comment is first used.
+   */
+  void scan() {
+    if (mInitialized || mScannedTags != null || !Doclava.parseComments()) {
+      return;
+    }
+    if (mHidden == null) {
+      prescan();
+    }
+    mScannedTags = new ArrayList<ScannedTag>();
+    parseCommentTags(mText);
+  }
+
+  /** A tag found by {@link #scan}, as ranges of the comment text so nothing is copied yet. */
+  private static class ScannedTag {
+    final int nameStart;
+    final int nameEnd;
+    final int textStart;
+    final int textEnd;
+    final boolean isInline;
+    final SourcePositionInfo pos;
+
+    ScannedTag(int nameStart, int nameEnd, int textStart, int textEnd, boolean isInline,
+        SourcePositionInfo pos) {
+      this.nameStart = nameStart;
+      this.nameEnd = nameEnd;
+      this.textStart = textStart;
+      this.textEnd = textEnd;
+      this.isInline = isInline;
+      this.pos = pos;
+    }
+
+    String name(String text) {
+      return nameStart < 0 ? null : text.substring(nameStart, nameEnd);
+    }
+
+    String text(String text) {
+      return textStart < 0 ? null : text.substring(textStart, textEnd);
+    }
+  }
+
   private void tag(String name, String text, boolean isInline, SourcePositionInfo pos) {
     /*
      * String s = isInline ? "inline" : "outofline"; System.out.println("---> " + s + " name=[" +
@@ -422,9 +471,9 @@ public class Comment {
       for (int i = 0; i < N; i++) {
         TagInfo t = mInlineTagsList.get(i);
         if (t.name().equals("Text")) {
-          Matcher m = FIRST_SENTENCE.matcher(t.text());
-          if (m.matches()) {
-            String text = m.group(1);
+          int end = firstSentenceEnd(t.text());
+          if (end >= 0) {
+            String text = t.text().substring(0, end);
             TagInfo firstSentenceTag = new TagInfo(t.name(), t.kind(), text, t.position());
             mBriefTagsList.add(firstSentenceTag);
             break;
@@ -436,6 +485,25 @@ public class Comment {
     }
   }
 
+  /**
+   * Returns where the first sentence of {@code text} ends, just after the first period that is
+   * followed by whitespace or a tag, or -1 if there is no such period.
+   */
+  private static int firstSentenceEnd(String text) {
+    int length = text.length();
+    for (int i = text.indexOf('.'); i >= 0 && i < length - 1; i = text.indexOf('.', i + 1)) {
+      switch (text.charAt(i + 1)) {
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+        case '<':
+          return i + 1;
+      }
+    }
+    return -1;
+  }
+
   public TagInfo[] tags() {
     init();
     return mInlineTags;
@@ -516,18 +584,15 @@ public class Comment {
 
   public boolean isHidden() {
     if (mHidden == null) {
-      mHidden = !Doclava.checkLevel(Doclava.SHOW_HIDDEN) &&
-          (mText != null) && (mText.indexOf("@hide") >= 0 || mText.indexOf("@pending") >= 0);
+      prescan();
     }
     return mHidden;
   }
 
   public boolean isRemoved() {
     if (mRemoved == null) {
-        mRemoved = !Doclava.checkLevel(Doclava.SHOW_HIDDEN) &&
-            (mText != null) && (mText.indexOf("@removed") >= 0);
+      prescan();
     }
-
     return mRemoved;
   }
 
@@ -556,19 +621,48 @@ public class Comment {
 
   public boolean isDocOnly() {
     if (mDocOnly == null) {
-      mDocOnly = (mText != null) && (mText.indexOf("@doconly") >= 0);
+      prescan();
     }
     return mDocOnly;
   }
 
   public boolean isDeprecated() {
     if (mDeprecated == null) {
-      mDeprecated = (mText != null) && (mText.indexOf("@deprecated") >= 0);
+      prescan();
     }
-
     return mDeprecated;
   }
 
+  /**
+   * Finds which of @hide, @pending, @removed, @doconly and @deprecated the text mentions, in
+   * one pass and without parsing it. Stubs and API checks only ask a comment these questions,
+   * so most comments are never parsed in those runs.
+   */
+  private void prescan() {
+    boolean hide = false;
+    boolean removed = false;
+    boolean docOnly = false;
+    boolean deprecated = false;
+    if (mText != null) {
+      for (int i = mText.indexOf('@'); i >= 0; i = mText.indexOf('@', i + 1)) {
+        if (mText.startsWith("hide", i + 1) || mText.startsWith("pending", i + 1)) {
+          hide = true;
+        } else if (mText.startsWith("removed", i + 1)) {
+          removed = true;
+        } else if (mText.startsWith("doconly", i + 1)) {
+          docOnly = true;
+        } else if (mText.startsWith("deprecated", i + 1)) {
+          deprecated = true;
+        }
+      }
+    }
+    boolean showHidden = Doclava.checkLevel(Doclava.SHOW_HIDDEN);
+    mHidden = !showHidden && hide;
+    mRemoved = !showHidden && removed;
+    mDocOnly = docOnly;
+    mDeprecated = deprecated;
+  }
+
   private void init() {
     if (!mInitialized) {
       initImpl();
@@ -576,19 +670,36 @@ public class Comment {
   }
 
   private void initImpl() {
-    isHidden();
-    isRemoved();
-    isDocOnly();
-    isDeprecated();
+    if (mHidden == null) {
+      prescan();
+    }
+
+    mInlineTagsList = new ArrayList<TagInfo>();
+    mTagsList = new ArrayList<TagInfo>();
+    mParamTagsList = new ArrayList<ParamTagInfo>();
+    mSeeTagsList = new ArrayList<SeeTagInfo>();
+    mThrowsTagsList = new ArrayList<ThrowsTagInfo>();
+    mBriefTagsList = new ArrayList<TagInfo>();
+    mReturnTagsList = new ArrayList<ParsedTagInfo>();
+    mDeprecatedTagsList = new ArrayList<ParsedTagInfo>();
+    mUndeprecateTagsList = new ArrayList<TagInfo>();
+    mAttrTagsList = new ArrayList<AttrTagInfo>();
+    mMemberDocTagsList = new ArrayList<ParsedTagInfo>();
+    mParamDocTagsList = new ArrayList<ParsedTagInfo>();
+    mReturnDocTagsList = new ArrayList<ParsedTagInfo>();
 
     // Don't bother parsing text if we aren't generating documentation.
     if (Doclava.parseComments()) {
-        parseCommentTags(mText);
+        scan();
+        for (ScannedTag t : mScannedTags) {
+          tag(t.name(mText), t.text(mText), t.isInline, t.pos);
+        }
+        mScannedTags = null;
         parseBriefTags();
     } else {
       // Forces methods to be recognized by findOverriddenMethods in MethodInfo.
       mInlineTagsList.add(new TextTagInfo("Text", "Text", mText,
-          SourcePositionInfo.add(mPosition, mText, 0)));
+          SourcePositionInfo.add(position(), mText, 0)));
     }
 
     mText = null;
@@ -634,7 +745,9 @@ public class Comment {
   String mText;
   ContainerInfo mBase;
   SourcePositionInfo mPosition;
+  private SourcePositionInfo mEndPosition;
   int mLine = 1;
+  private ArrayList<ScannedTag> mScannedTags;
 
   TagInfo[] mInlineTags;
   TagInfo[] mTags;
@@ -650,18 +763,19 @@ public class Comment {
   ParsedTagInfo[] mParamDocTags;
   ParsedTagInfo[] mReturnDocTags;
 
-  ArrayList<TagInfo> mInlineTagsList = new ArrayList<TagInfo>();
-  ArrayList<TagInfo> mTagsList = new ArrayList<TagInfo>();
-  ArrayList<ParamTagInfo> mParamTagsList = new ArrayList<ParamTagInfo>();
-  ArrayList<SeeTagInfo> mSeeTagsList = new ArrayList<SeeTagInfo>();
-  ArrayList<ThrowsTagInfo> mThrowsTagsList = new ArrayList<ThrowsTagInfo>();
-  ArrayList<TagInfo> mBriefTagsList = new ArrayList<TagInfo>();
-  ArrayList<ParsedTagInfo> mReturnTagsList = new ArrayList<ParsedTagInfo>();
-  ArrayList<ParsedTagInfo> mDeprecatedTagsList = new ArrayList<ParsedTagInfo>();
-  ArrayList<TagInfo> mUndeprecateTagsList = new ArrayList<TagInfo>();
-  ArrayList<AttrTagInfo> mAttrTagsList = new ArrayList<AttrTagInfo>();
-  ArrayList<ParsedTagInfo> mMemberDocTagsList = new ArrayList<ParsedTagInfo>();
-  ArrayList<ParsedTagInfo> mParamDocTagsList = new ArrayList<ParsedTagInfo>();
-  ArrayList<ParsedTagInfo> mReturnDocTagsList = new ArrayList<ParsedTagInfo>();
+  // the lists are only made when the comment is parsed
+  ArrayList<TagInfo> mInlineTagsList;
+  ArrayList<TagInfo> mTagsList;
+  ArrayList<ParamTagInfo> mParamTagsList;
+  ArrayList<SeeTagInfo> mSeeTagsList;
+  ArrayList<ThrowsTagInfo> mThrowsTagsList;
+  ArrayList<TagInfo> mBriefTagsList;
+  ArrayList<ParsedTagInfo> mReturnTagsList;
+  ArrayList<ParsedTagInfo> mDeprecatedTagsList;
+  ArrayList<TagInfo> mUndeprecateTagsList;
+  ArrayList<AttrTagInfo> mAttrTagsList;
+  ArrayList<ParsedTagInfo> mMemberDocTagsList;
+  ArrayList<ParsedTagInfo> mParamDocTagsList;
+  ArrayList<ParsedTagInfo> mReturnDocTagsList;
 
 }
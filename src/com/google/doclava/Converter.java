@@ -44,42 +44,126 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class Converter {
   private static RootDoc root;
   private static List<ApiInfo> apis;
 
+  /**
+   * Builds the doc model for the classes javadoc was run on, in phases:
+   * <ol>
+   * <li>create: a ClassInfo shell for every class reachable from them;
+   * <li>init: fill in each class's members, supertypes and annotations;
+   * <li>scan: split the comment of every class and member into tags, in parallel;
+   * <li>init2: link the {@code @attr} tags of each class to its attributes;
+   * <li>annotations: resolve annotation values.
+   * </ol>
+   * Every phase but scan reads javadoc, which is not thread-safe, so they run one class at a
+   * time in the order javadoc returned them. Scanning only reads each comment's own text, so
+   * the model, and the order any errors are reported in, is the same as a serial run.
+   * <p>
+   * When comments are not parsed, which is when only stubs and API files are written, the model
+   * only has signatures: scan and init2 are skipped, and comments keep just their raw text to
+   * answer whether they hide, remove or deprecate what they document.
+   */
   public static void makeInfo(RootDoc r) {
     root = r;
     apis = new ArrayList<>();
 
-    // create the objects
     ClassDoc[] classes = getClasses(r);
-    for (ClassDoc c : classes) {
-      Converter.obtainClass(c);
+    ArrayList<ClassInfo> classesNeedingInit2 = new ArrayList<ClassInfo>();
+    PhaseTimer timer = new PhaseTimer();
+
+    withJavadoc(() -> {
+      // create the objects
+      for (ClassDoc c : classes) {
+        Converter.obtainClass(c);
+      }
+      timer.end("create");
+
+      int i;
+      // fill in the fields that reference other classes
+      while (mClassesNeedingInit.size() > 0) {
+        i = mClassesNeedingInit.size() - 1;
+        ClassNeedingInit clni = mClassesNeedingInit.get(i);
+        mClassesNeedingInit.remove(i);
+
+        initClass(clni.c, clni.cl);
+        classesNeedingInit2.add(clni.cl);
+      }
+      mClassesNeedingInit = null;
+      timer.end("init");
+      return null;
+    });
+
+    boolean signaturesOnly = !Doclava.parseComments();
+    if (!signaturesOnly) {
+      scanComments(classesNeedingInit2);
+      timer.end("scan");
     }
 
-    ArrayList<ClassInfo> classesNeedingInit2 = new ArrayList<ClassInfo>();
+    withJavadoc(() -> {
+      if (!signaturesOnly) {
+        for (ClassInfo cl : classesNeedingInit2) {
+          cl.init2();
+        }
+        timer.end("init2");
+      }
+
+      finishAnnotationValueInit();
 
-    int i;
-    // fill in the fields that reference other classes
-    while (mClassesNeedingInit.size() > 0) {
-      i = mClassesNeedingInit.size() - 1;
-      ClassNeedingInit clni = mClassesNeedingInit.get(i);
-      mClassesNeedingInit.remove(i);
+      // fill in the "root" stuff
+      mRootClasses = Converter.convertClasses(classes);
+      timer.end("annotations");
+      return null;
+    });
+
+    System.out.println("Converted " + classesNeedingInit2.size() + " classes"
+        + (signaturesOnly ? " (signatures only)" : "") + ": " + timer);
+  }
 
-      initClass(clni.c, clni.cl);
-      classesNeedingInit2.add(clni.cl);
+  /** Scans the comments of {@code classes} and their members on the common fork-join pool. */
+  private static void scanComments(List<ClassInfo> classes) {
+    ArrayList<Comment> comments = new ArrayList<Comment>();
+    for (ClassInfo cl : classes) {
+      comments.add(cl.comment());
+      addComments(comments, cl.getExhaustiveConstructors());
+      addComments(comments, cl.getExhaustiveMethods());
+      addComments(comments, cl.annotationElements());
+      addComments(comments, cl.getExhaustiveFields());
+      addComments(comments, cl.getExhaustiveEnumConstants());
     }
-    mClassesNeedingInit = null;
-    for (ClassInfo cl : classesNeedingInit2) {
-      cl.init2();
+    comments.parallelStream().forEach(Comment::scan);
+  }
+
+  private static void addComments(List<Comment> comments, List<? extends DocInfo> docs) {
+    if (docs != null) {
+      for (DocInfo doc : docs) {
+        comments.add(doc.comment());
+      }
     }
+  }
 
-    finishAnnotationValueInit();
+  /** Times consecutive phases of {@link #makeInfo}. */
+  private static class PhaseTimer {
+    private final StringBuilder mTimes = new StringBuilder();
+    private long mStart = System.nanoTime();
 
-    // fill in the "root" stuff
-    mRootClasses = Converter.convertClasses(classes);
+    void end(String phase) {
+      long now = System.nanoTime();
+      if (mTimes.length() > 0) {
+        mTimes.append(", ");
+      }
+      mTimes.append(phase).append(' ').append((now - mStart) / 1000000).append(" ms");
+      mStart = now;
+    }
+
+    @Override
+    public String toString() {
+      return mTimes.toString();
+    }
   }
 
   /**
@@ -178,7 +262,7 @@ public class Converter {
    * @see #addApiInfo(ApiInfo)
    */
   public static ClassInfo obtainClass(String className) {
-    ClassInfo result = Converter.obtainClass(root.classNamed(className));
+    ClassInfo result = withJavadoc(() -> Converter.obtainClass(root.classNamed(className)));
     if (result != null) {
       return result;
     }
@@ -203,7 +287,8 @@ public class Converter {
    * @see #addApiInfo(ApiInfo)
    */
   public static PackageInfo obtainPackage(String packageName) {
-    PackageInfo result = Converter.obtainPackage(root.packageNamed(packageName));
+    PackageInfo result =
+        withJavadoc(() -> Converter.obtainPackage(root.packageNamed(packageName)));
     if (result != null) {
       return result;
     }
@@ -617,6 +702,11 @@ public class Converter {
       }
     }
 
+    @Override
+    protected boolean keyReadsJavadoc() {
+      return true;
+    }
+
     @Override
     protected Object keyFor(Object o) {
       Type t = (Type) o;
@@ -669,6 +759,13 @@ public class Converter {
   }
 
   private static final Cache mTypesFromString = new Cache() {
+    // Parsing a type name never reads javadoc, so the API files that ApiSpecLoader parses
+    // concurrently don't need the lock.
+    @Override
+    Object obtain(Object o) {
+      return o == null ? null : mCache.computeIfAbsent(o, this::make);
+    }
+
     @Override
     protected Object make(Object o) {
       String name = (String) o;
@@ -735,6 +832,37 @@ public class Converter {
   };
 
 
+  /**
+   * Guards the javadoc model, which is not thread-safe. It is held while reading any javadoc
+   * object and while converting one, but not while looking up objects already converted.
+   */
+  static final Object JAVADOC_LOCK = new Object();
+
+  /** How many calls to {@link #withJavadoc} the lock holder is in. */
+  private static int sJavadocDepth = 0;
+  private static final ArrayList<Cache> sUnpublished = new ArrayList<Cache>();
+
+  /**
+   * Runs {@code task} holding {@link #JAVADOC_LOCK}. Objects a cache creates during the task may
+   * still be partially initialized while it runs, so other threads only see them once the
+   * outermost task has returned.
+   */
+  static <T> T withJavadoc(Supplier<T> task) {
+    synchronized (JAVADOC_LOCK) {
+      sJavadocDepth++;
+      try {
+        return task.get();
+      } finally {
+        if (--sJavadocDepth == 0) {
+          for (Cache cache : sUnpublished) {
+            cache.publish();
+          }
+          sUnpublished.clear();
+        }
+      }
+    }
+  }
+
   private abstract static class Cache {
     void put(Object key, Object value) {
       mCache.put(key, value);
@@ -744,17 +872,44 @@ public class Converter {
       if (o == null) {
         return null;
       }
-      Object k = keyFor(o);
-      Object r = mCache.get(k);
-      if (r == null) {
-        r = make(o);
-        mCache.put(k, r);
-        made(o, r);
+      if (!keyReadsJavadoc()) {
+        Object r = mCache.get(o);
+        if (r != null) {
+          return r;
+        }
       }
-      return r;
+      return withJavadoc(() -> {
+        Object k = keyFor(o);
+        Object r = mCache.get(k);
+        if (r == null) {
+          r = mUnpublished.get(k);
+        }
+        if (r == null && !mUnpublished.containsKey(k)) {
+          r = make(o);
+          if (mUnpublished.isEmpty()) {
+            sUnpublished.add(this);
+          }
+          mUnpublished.put(k, r);
+          made(o, r);
+        }
+        return r;
+      });
     }
 
-    protected HashMap<Object, Object> mCache = new HashMap<Object, Object>();
+    /** Makes the objects created by the current {@link #withJavadoc} task visible to all. */
+    private void publish() {
+      for (Map.Entry<Object, Object> e : mUnpublished.entrySet()) {
+        if (e.getValue() != null) {
+          mCache.put(e.getKey(), e.getValue());
+        }
+      }
+      mUnpublished.clear();
+    }
+
+    protected final ConcurrentHashMap<Object, Object> mCache =
+        new ConcurrentHashMap<Object, Object>();
+    /** Only accessed with {@link #JAVADOC_LOCK} held. */
+    private final HashMap<Object, Object> mUnpublished = new HashMap<Object, Object>();
 
     protected abstract Object make(Object o);
 
@@ -764,6 +919,11 @@ public class Converter {
       return o;
     }
 
+    /** Whether {@link #keyFor} reads javadoc, so even a lookup has to hold the lock. */
+    protected boolean keyReadsJavadoc() {
+      return false;
+    }
+
     Collection<?> all() {
       return null;
     }
@@ -70,6 +70,8 @@ public abstract class DocInfo {
       // so that if we've created one prior to changing, we recreate it
       if (mComment != null) {
           mComment = new Comment(mRawCommentText, parent(), mPosition);
+          mFirstSentenceHDF = null;
+          mInlineTagsHDF = null;
       }
 
   }
@@ -91,6 +93,8 @@ public abstract class DocInfo {
       // so that if we've created one prior to changing, we recreate it
       if (mComment != null) {
           mComment = new Comment(mRawCommentText, parent(), mPosition);
+          mFirstSentenceHDF = null;
+          mInlineTagsHDF = null;
       }
   }
 
@@ -155,6 +159,36 @@ public abstract class DocInfo {
     return mFederatedReferences;
   }
 
+  /**
+   * Adds {@link TagInfo#makeHDF} of this item's first sentence under {@code base}. Lists of
+   * classes and members show the same first sentences on many pages, so they are only expanded
+   * once.
+   */
+  void makeFirstSentenceHDF(Data data, String base) {
+    if (mFirstSentenceHDF == null) {
+      mFirstSentenceHDF = renderFirstSentence();
+    }
+    mFirstSentenceHDF.makeHDF(data, base);
+  }
+
+  /** Adds {@link TagInfo#makeHDF} of this item's inline tags, as for the first sentence. */
+  void makeInlineTagsHDF(Data data, String base) {
+    if (mInlineTagsHDF == null) {
+      mInlineTagsHDF = renderInlineTags();
+    }
+    mInlineTagsHDF.makeHDF(data, base);
+  }
+
+  /** Renders the first sentence of this item's own comment. */
+  RenderedTags renderFirstSentence() {
+    return RenderedTags.of(comment().briefTags());
+  }
+
+  /** Renders the inline tags of this item's own comment. */
+  RenderedTags renderInlineTags() {
+    return RenderedTags.of(comment().tags());
+  }
+
   public final void setFederatedReferences(Data data, String base) {
     int pos = 0;
     for (FederatedSite source : getFederatedReferences()) {
@@ -171,4 +205,6 @@ public abstract class DocInfo {
   private String mArtifact;
   private String mDeprecatedSince;
   private Set<FederatedSite> mFederatedReferences = new LinkedHashSet<FederatedSite>();
+  private RenderedTags mFirstSentenceHDF;
+  private RenderedTags mInlineTagsHDF;
 }
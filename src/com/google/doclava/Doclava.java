@@ -18,6 +18,7 @@ package com.google.doclava;
 
 import com.google.clearsilver.jsilver.JSilver;
 import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.data.LocalAndGlobalData;
 import com.google.clearsilver.jsilver.resourceloader.ClassResourceLoader;
 import com.google.clearsilver.jsilver.resourceloader.CompositeResourceLoader;
 import com.google.clearsilver.jsilver.resourceloader.FileSystemResourceLoader;
@@ -26,6 +27,11 @@ import com.google.clearsilver.jsilver.resourceloader.ResourceLoader;
 import com.sun.javadoc.*;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -113,6 +119,10 @@ public class Doclava {
   public static Set<String> hiddenPackages = new HashSet<String>();
   public static boolean includeAssets = true;
   public static boolean includeDefaultAssets = true;
+  /* Only regenerate pages whose inputs changed since the previous run */
+  public static boolean incremental = false;
+  /* Cache parsed -since, -artifact and -federationapi files in snapshots next to them */
+  public static boolean apiSnapshots = false;
   private static boolean generateDocs = true;
   private static boolean parseComments = false;
   private static String yamlNavFile = null;
@@ -130,6 +140,10 @@ public class Doclava {
   public static Map<String, String> manifestPermissions = new HashMap<>();
 
   public static JSilver jSilver = null;
+  /* Number of threads used to render class pages; 1 renders them serially */
+  public static int renderThreads = 1;
+  /* Number of threads used to write stub files; 1 writes them serially */
+  public static int stubThreads = 1;
 
   //API reference extensions
   private static boolean gmsRef = false;
@@ -403,6 +417,14 @@ public class Doclava {
         android = true;
       } else if (a[0].equals("-manifest")) {
         manifestFile = a[1];
+      } else if (a[0].equals("-threads")) {
+        renderThreads = Integer.parseInt(a[1]);
+      } else if (a[0].equals("-stubthreads")) {
+        stubThreads = Integer.parseInt(a[1]);
+      } else if (a[0].equals("-incremental")) {
+        incremental = true;
+      } else if (a[0].equals("-apisnapshots")) {
+        apiSnapshots = true;
       }
     }
 
@@ -423,6 +445,10 @@ public class Doclava {
     Converter.makeInfo(r);
 
     if (generateDocs) {
+      if (incremental) {
+        PageManifest.init(ClearPage.outputDir);
+      }
+
       ClearPage.addBundledTemplateDir("assets/customizations");
       ClearPage.addBundledTemplateDir("assets/templates");
 
@@ -467,6 +493,12 @@ public class Doclava {
 
       // don't do ref doc tasks in devsite static-only builds
       if (!DEVSITE_STATIC_ONLY) {
+        // Parse the API files of all taggers concurrently; each tagger still
+        // applies its files in order.
+        federationTagger.startLoading();
+        sinceTagger.startLoading();
+        artifactTagger.startLoading();
+
         // Load additional data structures from federated sites.
         for(FederatedSite site : federationTagger.getSites()) {
           Converter.addApiInfo(site.apiInfo());
@@ -574,6 +606,10 @@ public class Doclava {
           PageMetadata.WriteSamplesListByLang(sTaglist);
         }
       }
+
+      PageManifest.finish();
+      TemplateCache.printStats();
+      LinkReference.printStats();
     }
 
     // Stubs
@@ -962,6 +998,18 @@ public class Doclava {
     if (option.equals("-manifest")) {
       return 2;
     }
+    if (option.equals("-threads")) {
+      return 2;
+    }
+    if (option.equals("-stubthreads")) {
+      return 2;
+    }
+    if (option.equals("-incremental")) {
+      return 1;
+    }
+    if (option.equals("-apisnapshots")) {
+      return 1;
+    }
     return 0;
   }
   public static boolean validOptions(String[][] options, DocErrorReporter r) {
@@ -974,6 +1022,18 @@ public class Doclava {
           return false;
         }
       }
+      if (a[0].equals("-threads") || a[0].equals("-stubthreads")) {
+        int threads;
+        try {
+          threads = Integer.parseInt(a[1]);
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          r.printError("bad " + a[0] + " value must be a positive number: " + a[1]);
+          return false;
+        }
+      }
     }
 
     return true;
@@ -989,8 +1049,48 @@ public class Doclava {
     return data;
   }
 
+  /**
+   * Returns the HDF for a page that lists the packages in its navigation.
+   * <p>
+   * The package list is the same on every page, so it is built once into a shared layer and
+   * each page's own values are kept in a layer of their own on top of it. Pages that change the
+   * package list itself should use {@link #copyPackageHDF} instead.
+   */
   public static Data makePackageHDF() {
+    Data nav = packageNavHDF();
+    if (!sCopyPackageNav) {
+      return new LocalAndGlobalData(makeHDF(), nav);
+    }
+    return copyPackageHDF();
+  }
+
+  /** Returns the HDF of {@link #makePackageHDF} with its own copy of the package list. */
+  public static Data copyPackageHDF() {
     Data data = makeHDF();
+    data.copy(packageNavHDF());
+    return data;
+  }
+
+  /** The package list shared by {@link #makePackageHDF}; never changed once built. */
+  private static Data sPackageNav = null;
+  /** Whether the -hdf values share nodes with the package list and so cannot be layered. */
+  private static boolean sCopyPackageNav;
+
+  private static Data packageNavHDF() {
+    if (sPackageNav == null) {
+      sPackageNav = jSilver.createData();
+      writePackageNav(sPackageNav);
+      for (String[] p : mHDFData) {
+        String root = p[0].split("\\.", 2)[0];
+        if (sPackageNav.getChild(root) != null) {
+          sCopyPackageNav = true;
+        }
+      }
+    }
+    return sPackageNav;
+  }
+
+  private static void writePackageNav(Data data) {
     Collection<ClassInfo> classes = Converter.rootClasses();
 
     SortedMap<String, PackageInfo> sorted = new TreeMap<String, PackageInfo>();
@@ -1069,12 +1169,11 @@ public class Doclava {
       data.setValue("docs.packages." + i + ".name", s);
       data.setValue("docs.packages." + i + ".link", pkg.htmlPage());
       data.setValue("docs.packages." + i + ".since", pkg.getSince());
-      TagInfo.makeHDF(data, "docs.packages." + i + ".shortDescr", pkg.firstSentenceTags());
+      pkg.makeFirstSentenceHDF(data, "docs.packages." + i + ".shortDescr");
       i++;
     }
 
     sinceTagger.writeVersionNames(data);
-    return data;
   }
 
   private static void writeDirectory(File dir, String relative, JSilver js) {
@@ -1469,7 +1568,7 @@ public class Doclava {
   }
 
   public static void writePackages(String filename) {
-    Data data = makePackageHDF();
+    Data data = copyPackageHDF();
 
     int i = 0;
     for (PackageInfo pkg : choosePackages()) {
@@ -1477,7 +1576,7 @@ public class Doclava {
 
       data.setValue("docs.packages." + i + ".name", pkg.name());
       data.setValue("docs.packages." + i + ".link", pkg.htmlPage());
-      TagInfo.makeHDF(data, "docs.packages." + i + ".shortDescr", pkg.firstSentenceTags());
+      pkg.makeFirstSentenceHDF(data, "docs.packages." + i + ".shortDescr");
 
       i++;
     }
@@ -1517,7 +1616,7 @@ public class Doclava {
     makeClassListHDF(data, "package.enums", ClassInfo.sortByName(pkg.enums()));
     makeClassListHDF(data, "package.exceptions", ClassInfo.sortByName(pkg.exceptions()));
     makeClassListHDF(data, "package.errors", ClassInfo.sortByName(pkg.errors()));
-    TagInfo.makeHDF(data, "package.shortDescr", pkg.firstSentenceTags());
+    pkg.makeFirstSentenceHDF(data, "package.shortDescr");
     TagInfo.makeHDF(data, "package.descr", pkg.inlineTags());
 
     String filename = pkg.htmlPage();
@@ -1632,6 +1731,11 @@ public class Doclava {
   public static void writeClasses() {
     Collection<ClassInfo> classes = Converter.rootClasses();
 
+    if (renderThreads > 1) {
+      writeClassesInParallel(classes);
+      return;
+    }
+
     for (ClassInfo cl : classes) {
       Data data = makePackageHDF();
       if (!cl.isHiddenOrRemoved()) {
@@ -1640,6 +1744,47 @@ public class Doclava {
     }
   }
 
+  /**
+   * Writes class pages using a pool of {@link #renderThreads} threads.
+   * <p>
+   * Building the HDF for a class touches lazily initialized state all over the doc model, so it
+   * stays on the calling thread in the same order as the serial path. Only template rendering
+   * and file output, which depend on nothing but the page's own {@link Data}, are handed to the
+   * pool. The work queue is bounded so that at most a few pages' worth of HDF are alive at once.
+   */
+  private static void writeClassesInParallel(Collection<ClassInfo> classes) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(renderThreads, renderThreads,
+        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(renderThreads * 2),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    List<Future<?>> pending = new ArrayList<Future<?>>();
+    try {
+      for (ClassInfo cl : classes) {
+        Data data = makePackageHDF();
+        if (!cl.isHiddenOrRemoved()) {
+          cl.makeHDF(data);
+          setPageTitle(data, cl.name());
+          final String outfile = cl.htmlPage();
+          pending.add(executor.submit(() -> ClearPage.write(data, "class.cs", outfile)));
+          Proofread.writeClass(outfile, cl);
+        }
+      }
+      for (Future<?> f : pending) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while writing class pages", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   public static void writeClass(ClassInfo cl, Data data) {
     cl.makeHDF(data);
     setPageTitle(data, cl.name());
@@ -20,12 +20,15 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 
 public class Errors {
   public static boolean hadError = false;
   private static boolean lintsAreErrors = false;
   private static boolean warningsAreErrors = false;
   private static TreeSet<ErrorMessage> allErrors = new TreeSet<ErrorMessage>();
+  private static final ThreadLocal<List<ErrorMessage>> sCollected =
+      new ThreadLocal<List<ErrorMessage>>();
 
   public static class ErrorMessage implements Comparable<ErrorMessage> {
     final int resolvedLevel;
@@ -118,19 +121,60 @@ public class Errors {
       where = new SourcePositionInfo("unknown", 0, 0);
     }
 
-    allErrors.add(new ErrorMessage(resolvedLevel, error, where, text));
+    ErrorMessage message = new ErrorMessage(resolvedLevel, error, where, text);
+    List<ErrorMessage> collected = sCollected.get();
+    if (collected != null) {
+      collected.add(message);
+    } else {
+      add(message);
+    }
+  }
+
+  private static synchronized void add(ErrorMessage message) {
+    allErrors.add(message);
 
-    if (resolvedLevel == ERROR) {
+    if (message.resolvedLevel == ERROR) {
       hadError = true;
     }
   }
+
+  /**
+   * Runs {@code task}, holding back the errors it reports on this thread in {@code errors}
+   * instead of recording them. Tasks run in parallel can then {@link #report} their errors in
+   * a fixed order, which matters because only the first of two equal errors is kept.
+   */
+  public static <T> T collect(List<ErrorMessage> errors, Supplier<T> task) {
+    List<ErrorMessage> outer = sCollected.get();
+    sCollected.set(errors);
+    try {
+      return task.get();
+    } finally {
+      if (outer != null) {
+        sCollected.set(outer);
+      } else {
+        sCollected.remove();
+      }
+    }
+  }
+
+  /** Records errors held back by {@link #collect}, as if they were reported now. */
+  public static void report(List<ErrorMessage> errors) {
+    List<ErrorMessage> collected = sCollected.get();
+    for (ErrorMessage message : errors) {
+      if (collected != null) {
+        collected.add(message);
+      } else {
+        add(message);
+      }
+    }
+  }
   
-  public static void clearErrors() {
+  public static synchronized void clearErrors() {
     hadError = false;
     allErrors.clear();
   }
 
-  public static void printErrors() {
+  public static synchronized void printErrors() {
     printErrors(allErrors);
   }
   
@@ -190,9 +234,13 @@ public class Errors {
      */
     private final Error parent;
 
+    /** The level this error was declared with, for {@link Errors#resetErrorLevels}. */
+    private final int defaultLevel;
+
     public Error(int code, int level) {
       this.code = code;
       this.level = level;
+      this.defaultLevel = level;
       this.parent = null;
       sErrors.add(this);
     }
@@ -200,6 +248,7 @@ public class Errors {
     public Error(int code, Error parent) {
       this.code = code;
       this.level = -1;
+      this.defaultLevel = -1;
       this.parent = parent;
       sErrors.add(this);
     }
@@ -315,6 +364,13 @@ public class Errors {
   public static final Error NO_ARTIFACT_DATA = new Error(129, HIDDEN);
   public static final Error BROKEN_ARTIFACT_FILE = new Error(130, ERROR);
 
+  /** Undoes every {@link #setErrorLevel} call. */
+  public static void resetErrorLevels() {
+    for (Error e : sErrors) {
+      e.level = e.defaultLevel;
+    }
+  }
+
   public static boolean setErrorLevel(int code, int level) {
     for (Error e : sErrors) {
       if (e.code == code) {
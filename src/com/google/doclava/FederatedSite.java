@@ -37,12 +37,7 @@ public final class FederatedSite {
     this.name = name;
     this.baseUrl = baseUrl;
     
-    try {
-      URL xmlUrl = new URL(baseUrl + "/xml/current.xml");
-      this.apiInfo = new ApiCheck().parseApi(xmlUrl);
-    } catch (MalformedURLException e) {
-      throw new AssertionError(e);
-    }
+    this.apiInfo = new ApiCheck().parseApi(apiUrl(baseUrl));
   }
   
   /**
@@ -55,6 +50,26 @@ public final class FederatedSite {
     this.apiInfo = new ApiCheck().parseApi(api);
   }
 
+  /**
+   * Constructs a federated site from an API that has already been parsed.
+   */
+  FederatedSite(String name, URL baseUrl, ApiInfo apiInfo) {
+    this.name = name;
+    this.baseUrl = baseUrl;
+    this.apiInfo = apiInfo;
+  }
+
+  /**
+   * Returns the location of the API file published by the site at {@code baseUrl}.
+   */
+  static URL apiUrl(URL baseUrl) {
+    try {
+      return new URL(baseUrl + "/xml/current.xml");
+    } catch (MalformedURLException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   public String linkFor(String htmlPage) {
     return baseUrl + "/" + htmlPage;
   }
@@ -16,6 +16,7 @@
 
 package com.google.doclava;
 
+import com.google.doclava.apicheck.ApiInfo;
 import com.google.doclava.apicheck.ApiParseException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -24,6 +25,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Cross-references documentation among different libraries. A FederationTagger
@@ -34,6 +36,7 @@ public final class FederationTagger {
   private final Map<String, URL> federatedUrls = new HashMap<>();
   private final Map<String, String> federatedXmls = new HashMap<>();
   private final List<FederatedSite> federatedSites = new ArrayList<>();
+  private final Map<String, Future<ApiInfo>> federatedApis = new HashMap<>();
 
   private boolean initialized = false;
 
@@ -71,6 +74,26 @@ public final class FederationTagger {
     federatedXmls.put(name, file);
   }
 
+  /**
+   * Starts parsing the API of every site in the background. Called when the sites are first
+   * needed; calling it earlier lets the parsing overlap with other work.
+   */
+  public void startLoading() {
+    if (initialized) {
+      return;
+    }
+    for (String name : federatedUrls.keySet()) {
+      if (!federatedApis.containsKey(name)) {
+        if (federatedXmls.containsKey(name)) {
+          federatedApis.put(name, ApiSpecLoader.load(federatedXmls.get(name)));
+        } else {
+          federatedApis.put(name,
+              ApiSpecLoader.load(FederatedSite.apiUrl(federatedUrls.get(name))));
+        }
+      }
+    }
+  }
+
   public void tag(ClassInfo classDoc) {
     initialize();
     for (FederatedSite site : federatedSites) {
@@ -106,14 +129,11 @@ public final class FederationTagger {
       }
     }
 
+    startLoading();
     for (String name : federatedUrls.keySet()) {
       try {
-        if (federatedXmls.containsKey(name)) {
-          federatedSites.add(new FederatedSite(name, federatedUrls.get(name),
-              federatedXmls.get(name)));
-        } else {
-          federatedSites.add(new FederatedSite(name, federatedUrls.get(name)));
-        }
+        federatedSites.add(new FederatedSite(name, federatedUrls.get(name),
+            ApiSpecLoader.get(federatedApis.get(name))));
       } catch (ApiParseException e) {
         String error = "Could not add site for federation: " + name;
         if (e.getMessage() != null) {
@@ -123,6 +143,7 @@ public final class FederationTagger {
       }
     }
 
+    federatedApis.clear();
     initialized = true;
   }
 
@@ -370,8 +370,8 @@ public class FieldInfo extends MemberInfo {
     data.setValue(base + ".name", name());
     data.setValue(base + ".href", htmlPage());
     data.setValue(base + ".anchor", anchor());
-    TagInfo.makeHDF(data, base + ".shortDescr", firstSentenceTags());
-    TagInfo.makeHDF(data, base + ".descr", inlineTags());
+    makeFirstSentenceHDF(data, base + ".shortDescr");
+    makeInlineTagsHDF(data, base + ".descr");
     TagInfo.makeHDF(data, base + ".descrAux", Doclava.auxSource.fieldAuxTags(this));
     TagInfo.makeHDF(data, base + ".deprecated", comment().deprecatedTags());
     TagInfo.makeHDF(data, base + ".seeAlso", comment().seeTags());
@@ -19,6 +19,8 @@ package com.google.doclava;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that represents what you see in an link or see tag. This is factored out of SeeTagInfo so
@@ -69,6 +71,15 @@ public class LinkReference {
    */
   private static final Pattern QUOTE_PATTERN = Pattern.compile("^\"([^\"]*)\"[ \n\r\t]*$");
 
+  /**
+   * Links already resolved, by text and the container they were written in. The same targets
+   * are linked from many comments, and every page that shows a comment parses its links again.
+   */
+  private static final ConcurrentHashMap<Key, Resolution> sResolved =
+      new ConcurrentHashMap<Key, Resolution>();
+  private static final AtomicLong sHits = new AtomicLong();
+  private static final AtomicLong sMisses = new AtomicLong();
+
   /**
    * Parse and resolve a link string.
    * 
@@ -80,7 +91,30 @@ public class LinkReference {
    */
   public static LinkReference parse(String text, ContainerInfo base, SourcePositionInfo pos,
       boolean printOnErrors) {
-    LinkReference result = new LinkReference();
+    Key key = new Key(text, base, printOnErrors);
+    Resolution resolution = sResolved.get(key);
+    if (resolution != null) {
+      sHits.incrementAndGet();
+    } else {
+      sMisses.incrementAndGet();
+      resolution = new Resolution();
+      resolve(resolution, text, base, pos, printOnErrors);
+      Resolution raced = sResolved.putIfAbsent(key, resolution);
+      if (raced != null) {
+        resolution = raced;
+      }
+    }
+    resolution.reportErrors(pos);
+    return resolution.mLink;
+  }
+
+  /**
+   * Resolves {@code text} into {@code resolution}, noting the errors it finds there instead of
+   * reporting them. {@code pos} is only used to describe lookups that fail outright.
+   */
+  private static void resolve(Resolution resolution, String text, ContainerInfo base,
+      SourcePositionInfo pos, boolean printOnErrors) {
+    LinkReference result = resolution.mLink;
     result.text = text;
 
     int index;
@@ -121,8 +155,8 @@ public class LinkReference {
       }
     }
     if (index == len && pairs != 0) {
-      Errors.error(Errors.UNRESOLVED_LINK, pos, "unable to parse link/see tag: " + text.trim());
-      return result;
+      resolution.error(Errors.UNRESOLVED_LINK, "unable to parse link/see tag: " + text.trim());
+      return;
     }
 
     int linkend = index;
@@ -357,9 +391,9 @@ public class LinkReference {
       // literal quoted reference (e.g., a book title)
       Matcher matcher = QUOTE_PATTERN.matcher(text);
       if (!matcher.matches()) {
-        Errors.error(Errors.UNRESOLVED_LINK, pos, "unbalanced quoted link/see tag: " + text.trim());
+        resolution.error(Errors.UNRESOLVED_LINK, "unbalanced quoted link/see tag: " + text.trim());
         result.makeError();
-        return result;
+        return;
       }
       skipHref = true;
       result.label = matcher.group(1);
@@ -369,9 +403,9 @@ public class LinkReference {
       // explicit "<a href" form
       Matcher matcher = HREF_PATTERN.matcher(text);
       if (!matcher.matches()) {
-        Errors.error(Errors.UNRESOLVED_LINK, pos, "invalid <a> link/see tag: " + text.trim());
+        resolution.error(Errors.UNRESOLVED_LINK, "invalid <a> link/see tag: " + text.trim());
         result.makeError();
-        return result;
+        return;
       }
       result.href = matcher.group(1);
       result.label = matcher.group(2);
@@ -416,34 +450,32 @@ public class LinkReference {
 
     if (result.href == null && !skipHref) {
       if (printOnErrors && (base == null || base.checkLevel())) {
-        Errors.error(Errors.UNRESOLVED_LINK, pos, "Unresolved link/see tag \"" + text.trim()
+        resolution.error(Errors.UNRESOLVED_LINK, "Unresolved link/see tag \"" + text.trim()
             + "\" in " + ((base != null) ? base.qualifiedName() : "[null]"));
       }
       result.makeError();
     } else if (result.memberInfo != null && !result.memberInfo.checkLevel()) {
       if (printOnErrors && (base == null || base.checkLevel())) {
-        Errors.error(Errors.HIDDEN_LINK, pos, "Link to hidden member: " + text.trim());
+        resolution.error(Errors.HIDDEN_LINK, "Link to hidden member: " + text.trim());
         result.href = null;
       }
       result.kind = "@seeJustLabel";
     } else if (result.classInfo != null && !result.classInfo.checkLevel()) {
       if (printOnErrors && (base == null || base.checkLevel())) {
-        Errors.error(Errors.HIDDEN_LINK, pos, "Link to hidden class: " + text.trim() + " label="
+        resolution.error(Errors.HIDDEN_LINK, "Link to hidden class: " + text.trim() + " label="
             + result.label);
         result.href = null;
       }
       result.kind = "@seeJustLabel";
     } else if (result.packageInfo != null && !result.packageInfo.checkLevel()) {
       if (printOnErrors && (base == null || base.checkLevel())) {
-        Errors.error(Errors.HIDDEN_LINK, pos, "Link to hidden package: " + text.trim());
+        resolution.error(Errors.HIDDEN_LINK, "Link to hidden package: " + text.trim());
         result.href = null;
       }
       result.kind = "@seeJustLabel";
     }
 
     result.good = true;
-
-    return result;
   }
 
   public boolean checkLevel() {
@@ -485,6 +517,59 @@ public class LinkReference {
     }
   }
 
+  public static void printStats() {
+    System.out.println("Link cache: " + sHits.get() + " hits, " + sMisses.get() + " misses");
+  }
+
+  /** What {@link #parse} was called with, apart from the position. */
+  private static class Key {
+    private final String mText;
+    private final ContainerInfo mBase;
+    private final boolean mPrintOnErrors;
+
+    Key(String text, ContainerInfo base, boolean printOnErrors) {
+      mText = text;
+      mBase = base;
+      mPrintOnErrors = printOnErrors;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      // containers are compared by identity; a package and a class may share a name
+      return mBase == k.mBase && mPrintOnErrors == k.mPrintOnErrors && mText.equals(k.mText);
+    }
+
+    @Override
+    public int hashCode() {
+      return mText.hashCode() * 31 + System.identityHashCode(mBase) + (mPrintOnErrors ? 1 : 0);
+    }
+  }
+
+  /**
+   * A resolved link and the errors resolving it found, which are reported again at the
+   * position of each tag that uses it.
+   */
+  private static class Resolution {
+    final LinkReference mLink = new LinkReference();
+    private final ArrayList<Errors.Error> mErrors = new ArrayList<Errors.Error>();
+    private final ArrayList<String> mMessages = new ArrayList<String>();
+
+    void error(Errors.Error error, String message) {
+      mErrors.add(error);
+      mMessages.add(message);
+    }
+
+    void reportErrors(SourcePositionInfo pos) {
+      for (int i = 0; i < mErrors.size(); i++) {
+        Errors.error(mErrors.get(i), pos, mMessages.get(i));
+      }
+    }
+  }
+
   /** private. **/
   private LinkReference() {}
 }
@@ -55,15 +55,6 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     }
   }
 
-  private static void addInterfaces(ArrayList<ClassInfo> ifaces, ArrayList<ClassInfo> queue) {
-    for (ClassInfo i : ifaces) {
-      queue.add(i);
-    }
-    for (ClassInfo i : ifaces) {
-      addInterfaces(i.interfaces(), queue);
-    }
-  }
-
   // first looks for a superclass, and then does a breadth first search to
   // find the least far away match
   public MethodInfo findOverriddenMethod(String name, String signature) {
@@ -75,29 +66,27 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
       return mOverriddenMethod;
     }
 
-    ArrayList<ClassInfo> queue = new ArrayList<ClassInfo>();
-    addInterfaces(containingClass().interfaces(), queue);
-    for (ClassInfo iface : queue) {
+    // Inherited tags look up this method's own name and signature again and again.
+    boolean own = name.equals(name()) && signature.equals(signature());
+    if (own && mInheritedDocsKnown) {
+      return mInheritedDocs;
+    }
+    MethodInfo found = null;
+    search:
+    for (ClassInfo iface : containingClass().interfaceSearchOrder()) {
       for (MethodInfo me : iface.methods()) {
         if (me.name().equals(name) && me.signature().equals(signature)
             && me.inlineTags().tags() != null && me.inlineTags().tags().length > 0) {
-          return me;
+          found = me;
+          break search;
         }
       }
     }
-    return null;
-  }
-
-  private static void addRealInterfaces(ArrayList<ClassInfo> ifaces, ArrayList<ClassInfo> queue) {
-    for (ClassInfo i : ifaces) {
-      queue.add(i);
-      if (i.realSuperclass() != null && i.realSuperclass().isAbstract()) {
-        queue.add(i.superclass());
-      }
-    }
-    for (ClassInfo i : ifaces) {
-      addInterfaces(i.realInterfaces(), queue);
+    if (own) {
+      mInheritedDocs = found;
+      mInheritedDocsKnown = true;
     }
+    return found;
   }
 
   public MethodInfo findRealOverriddenMethod(String name, String signature, HashSet notStrippable) {
@@ -109,13 +98,7 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
       return mOverriddenMethod;
     }
 
-    ArrayList<ClassInfo> queue = new ArrayList<ClassInfo>();
-    if (containingClass().realSuperclass() != null
-        && containingClass().realSuperclass().isAbstract()) {
-      queue.add(containingClass().realSuperclass());
-    }
-    addInterfaces(containingClass().realInterfaces(), queue);
-    for (ClassInfo iface : queue) {
+    for (ClassInfo iface : containingClass().realOverrideSearchOrder()) {
       for (MethodInfo me : iface.methods()) {
         if (me.name().equals(name) && me.signature().equals(signature)
             && me.inlineTags().tags() != null && me.inlineTags().tags().length > 0
@@ -139,11 +122,9 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
       }
     }
 
-    for (ClassInfo clazz : containingClass().gatherAncestorClasses()) {
-      for (MethodInfo method : clazz.getExhaustiveMethods()) {
-        if (equals(method) && !method.isStatic() && predicate.test(method)) {
-          return method;
-        }
+    for (MethodInfo method : containingClass().ancestorMethods(this)) {
+      if (predicate.test(method)) {
+        return method;
       }
     }
     return null;
@@ -158,13 +139,7 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
       return mOverriddenMethod.mRealContainingClass;
     }
 
-    ArrayList<ClassInfo> queue = new ArrayList<ClassInfo>();
-    if (containingClass().realSuperclass() != null
-        && containingClass().realSuperclass().isAbstract()) {
-      queue.add(containingClass().realSuperclass());
-    }
-    addInterfaces(containingClass().realInterfaces(), queue);
-    for (ClassInfo iface : queue) {
+    for (ClassInfo iface : containingClass().realOverrideSearchOrder()) {
       for (MethodInfo me : iface.methods()) {
         if (me.name().equals(name) && me.signature().equals(signature)
             && me.inlineTags().tags() != null && me.inlineTags().tags().length > 0) {
@@ -342,6 +317,16 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     return new FirstSentenceTags();
   }
 
+  @Override
+  RenderedTags renderFirstSentence() {
+    return RenderedTags.of(firstSentenceTags());
+  }
+
+  @Override
+  RenderedTags renderInlineTags() {
+    return RenderedTags.of(inlineTags());
+  }
+
   public InheritedTags returnTags() {
     return new ReturnTags();
   }
@@ -351,7 +336,10 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
   }
 
   public String prettySignature() {
-    return name() + prettyParameters();
+    if (mPrettySignature == null) {
+      mPrettySignature = Names.intern(name() + prettyParameters());
+    }
+    return mPrettySignature;
   }
 
   public String prettyQualifiedSignature() {
@@ -362,6 +350,9 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
    * Returns a printable version of the parameters of this method's signature.
    */
   public String prettyParameters() {
+    if (mPrettyParameters != null) {
+      return mPrettyParameters;
+    }
     StringBuilder params = new StringBuilder("(");
     for (ParameterInfo pInfo : mParameters) {
       if (params.length() > 1) {
@@ -371,18 +362,23 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     }
 
     params.append(")");
-    return params.toString();
+    mPrettyParameters = Names.intern(params.toString());
+    return mPrettyParameters;
   }
 
   /**
    * Returns a name consistent with the {@link com.google.doclava.MethodInfo#getHashableName()}.
    */
   public String getHashableName() {
+    if (mHashableName != null) {
+      return mHashableName;
+    }
     StringBuilder result = new StringBuilder();
     result.append(name());
 
     if (mParameters == null) {
-        return result.toString();
+        mHashableName = Names.intern(result.toString());
+        return mHashableName;
     }
 
     int i = 0;
@@ -398,7 +394,8 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
       }
       i++;
     }
-    return result.toString();
+    mHashableName = Names.intern(result.toString());
+    return mHashableName;
   }
 
   private boolean inList(ClassInfo item, ThrowsTagInfo[] list) {
@@ -623,8 +620,8 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     data.setValue(base + ".final", isFinal() ? "final" : "");
     data.setValue(base + ".static", isStatic() ? "static" : "");
 
-    TagInfo.makeHDF(data, base + ".shortDescr", firstSentenceTags());
-    TagInfo.makeHDF(data, base + ".descr", inlineTags());
+    makeFirstSentenceHDF(data, base + ".shortDescr");
+    makeInlineTagsHDF(data, base + ".descr");
     TagInfo.makeHDF(data, base + ".descrAux", Doclava.auxSource.methodAuxTags(this));
     TagInfo.makeHDF(data, base + ".blockTags", blockTags());
     TagInfo.makeHDF(data, base + ".deprecated", deprecatedTags());
@@ -711,6 +708,7 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
 
   public void setVarargs(boolean set) {
     mIsVarargs = set;
+    mHashableName = null;
   }
 
   public boolean isVarArgs() {
@@ -771,6 +769,9 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     }
 
     mParameters.add(p);
+    mHashableName = null;
+    mPrettyParameters = null;
+    mPrettySignature = null;
   }
 
   private String mFlatSignature;
@@ -793,6 +794,13 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
   private AnnotationValueInfo mDefaultAnnotationElementValue;
   private String mReasonOpened;
   private ArrayList<Resolution> mResolutions;
+  // Worked out on first use and cleared when parameters are added.
+  private String mHashableName;
+  private String mPrettyParameters;
+  private String mPrettySignature;
+  // What findOverriddenMethod found for this method's own name and signature.
+  private boolean mInheritedDocsKnown;
+  private MethodInfo mInheritedDocs;
 
   // TODO: merge with droiddoc version (above)
   public String qualifiedName() {
@@ -821,7 +829,8 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
   }
 
   public boolean matches(MethodInfo other) {
-    return prettySignature().equals(other.prettySignature());
+    // pretty signatures are interned, see Names
+    return prettySignature() == other.prettySignature();
   }
 
   public boolean throwsException(ClassInfo exception) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * The names shared by the doc model and the parsed API files. Class names, type names and
+ * method signatures repeat across every class that mentions them, so each distinct name is kept
+ * once here and the model holds that one instance.
+ * <p>
+ * Names handed out by {@link #intern} can be compared with {@code ==}; this is what lets
+ * {@link ClassInfo#equals} compare qualified names by identity.
+ * <p>
+ * Names are only held weakly, so a name is dropped once no model uses it. A process that
+ * parses many APIs, such as an ApiCheck daemon, only keeps the names of the APIs it still has.
+ */
+public class Names {
+  private static final Interner<String> sNames = Interners.newWeakInterner();
+
+  /** Returns the shared instance of {@code name}, or null if {@code name} is null. */
+  public static String intern(String name) {
+    return name == null ? null : sNames.intern(name);
+  }
+}
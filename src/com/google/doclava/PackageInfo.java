@@ -281,6 +281,18 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     mContainingApi = api;
   }
 
+  /**
+   * A digest of this package's declaration in the API text file it was read from, or 0 if it
+   * wasn't read from one. Packages with the same nonzero digest were declared identically.
+   */
+  public long apiDigest() {
+    return mApiDigest;
+  }
+
+  public void setApiDigest(long digest) {
+    mApiDigest = digest;
+  }
+
   @Override
   public String toString() {
     return this.name();
@@ -310,6 +322,7 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
   private String mName;
   private PackageDoc mPackage;
   private ApiInfo mContainingApi;
+  private long mApiDigest;
   private ClassInfo[] mAnnotations;
   private ClassInfo[] mInterfaces;
   private ClassInfo[] mOrdinaryClasses;
@@ -503,6 +516,10 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
           // TODO: Log skipping this?
           continue;
       }
+      if (cInfo.hasSameApi(pInfo.mClasses.get(cInfo.name()))) {
+        // declared identically, so there is nothing to report
+        continue;
+      }
       if (pInfo.mClasses.containsKey(cInfo.name())) {
         if (diffMode) {
           newClsApis = new ArrayList<>();
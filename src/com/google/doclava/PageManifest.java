@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.data.Data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which pages {@link ClearPage#write} produced in the previous run, and with which
+ * inputs, so that an incremental build only renders the pages that changed.
+ * <p>
+ * A page's fingerprint covers the template it is rendered with, the complete HDF passed to
+ * that template, and the size and modification time of every template on the load path and of
+ * the doclava jar, which holds the bundled templates. Pages made from .jd files
+ * carry the file's contents in their HDF, so edits to the source are covered as well.
+ * <p>
+ * The manifest is stored in the output directory. Pages that were listed in it but were not
+ * produced by the current run are deleted when the run finishes.
+ */
+public class PageManifest {
+  public static final String FILENAME = ".doclava-manifest";
+  private static final String HEADER = "# doclava page manifest v1";
+
+  private static Path sBase = null;
+  private static Map<String, String> sPrevious = new HashMap<String, String>();
+  private static final Map<String, String> sCurrent = new ConcurrentHashMap<String, String>();
+  private static final Map<List<String>, String> sLoadPathFingerprints =
+      new ConcurrentHashMap<List<String>, String>();
+
+  public static boolean isEnabled() {
+    return sBase != null;
+  }
+
+  /**
+   * Enables incremental output for pages written below {@code outputDir} and reads the
+   * manifest left there by the previous run, if any.
+   */
+  public static void init(String outputDir) {
+    sBase = new File(outputDir).getAbsoluteFile().toPath().normalize();
+    sPrevious = new HashMap<String, String>();
+    sCurrent.clear();
+
+    File manifest = sBase.resolve(FILENAME).toFile();
+    if (!manifest.isFile()) {
+      return;
+    }
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest),
+          StandardCharsets.UTF_8));
+      String line = in.readLine();
+      if (!HEADER.equals(line)) {
+        // Unknown format; treat every page as out of date.
+        return;
+      }
+      while ((line = in.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space > 0) {
+          String key = line.substring(space + 1);
+          if (isBelowBase(key)) {
+            sPrevious.put(key, line.substring(0, space));
+          } else {
+            System.err.println("ignoring page outside " + sBase + " in " + manifest + ": " + key);
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("error reading " + manifest + ": " + e.getMessage()
+          + "; rebuilding all pages");
+      sPrevious.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {}
+      }
+    }
+  }
+
+  /**
+   * Returns the fingerprint of a page rendered from {@code templ} with {@code data}, which
+   * must already hold every value the page is rendered with.
+   */
+  public static String fingerprint(Data data, String templ, List<String> loadPaths) {
+    MessageDigest digest = newDigest();
+    update(digest, templ);
+    update(digest, loadPathFingerprint(loadPaths));
+    DigestAppendable out = new DigestAppendable(digest);
+    try {
+      data.write(out, 0);
+      out.flush();
+    } catch (IOException e) {
+      // DigestAppendable does not throw.
+      throw new IllegalStateException(e);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Returns true if {@code file} exists and was produced from the same inputs in the previous
+   * run. In that case the page is kept in the manifest and does not need to be written again.
+   */
+  public static boolean isUpToDate(File file, String fingerprint) {
+    String key = key(file);
+    if (fingerprint.equals(sPrevious.get(key)) && file.isFile()) {
+      sCurrent.put(key, fingerprint);
+      return true;
+    }
+    return false;
+  }
+
+  /** Records that {@code file} was written from inputs with the given fingerprint. */
+  public static void pageWritten(File file, String fingerprint) {
+    sCurrent.put(key(file), fingerprint);
+  }
+
+  /**
+   * Deletes pages left over from the previous run that this run did not produce, and saves the
+   * manifest for the next run.
+   */
+  public static void finish() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    for (String key : sPrevious.keySet()) {
+      if (!sCurrent.containsKey(key)) {
+        File orphan = sBase.resolve(key).toFile();
+        if (orphan.isFile() && !orphan.delete()) {
+          System.err.println("error deleting stale page: " + orphan);
+        }
+      }
+    }
+
+    File manifest = sBase.resolve(FILENAME).toFile();
+    ClearPage.ensureDirectory(manifest);
+    Writer out = null;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifest),
+          StandardCharsets.UTF_8));
+      out.write(HEADER);
+      out.write('\n');
+      for (Map.Entry<String, String> entry : new TreeMap<String, String>(sCurrent).entrySet()) {
+        out.write(entry.getValue());
+        out.write(' ');
+        out.write(entry.getKey());
+        out.write('\n');
+      }
+    } catch (IOException e) {
+      System.err.println("error writing " + manifest + ": " + e.getMessage());
+      manifest.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {}
+      }
+    }
+  }
+
+  /**
+   * Whether {@code key} names a file below the output directory. Stale pages are deleted by
+   * key, so a manifest must not be able to reach anything else.
+   */
+  private static boolean isBelowBase(String key) {
+    try {
+      Path path = sBase.resolve(key).normalize();
+      return path.startsWith(sBase) && !path.equals(sBase);
+    } catch (InvalidPathException e) {
+      return false;
+    }
+  }
+
+  private static String key(File file) {
+    return sBase.relativize(file.getAbsoluteFile().toPath().normalize()).toString();
+  }
+
+  private static String loadPathFingerprint(List<String> loadPaths) {
+    List<String> key = new ArrayList<String>(loadPaths);
+    String fingerprint = sLoadPathFingerprints.get(key);
+    if (fingerprint == null) {
+      MessageDigest digest = newDigest();
+      for (String dir : key) {
+        update(digest, dir);
+        addFileStats(digest, new File(dir));
+      }
+      // The bundled templates are loaded from the classpath.
+      CodeSource source = Doclava.class.getProtectionDomain().getCodeSource();
+      if (source != null) {
+        try {
+          addFileStats(digest, new File(source.getLocation().toURI()));
+        } catch (URISyntaxException e) {
+          update(digest, source.getLocation().toString());
+        }
+      }
+      fingerprint = toHex(digest.digest());
+      sLoadPathFingerprints.put(key, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  private static void addFileStats(MessageDigest digest, File f) {
+    if (f.isDirectory()) {
+      File[] files = f.listFiles();
+      if (files == null) {
+        return;
+      }
+      Arrays.sort(files);
+      for (File child : files) {
+        addFileStats(digest, child);
+      }
+    } else if (f.isFile() && (isTemplate(f) || f.getName().endsWith(".jar"))) {
+      update(digest, f.getPath() + ":" + f.length() + ":" + f.lastModified());
+    }
+  }
+
+  // The load path also holds the .jd sources and static files; only templates affect rendering.
+  private static boolean isTemplate(File f) {
+    String name = f.getName();
+    return name.endsWith(".cs") || name.endsWith(".hdf");
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    digest.update(s.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  /** Feeds the HDF dump into a digest without building it as a String first. */
+  private static class DigestAppendable implements Appendable {
+    private final MessageDigest mDigest;
+    private final byte[] mBuffer = new byte[4096];
+    private int mCount = 0;
+
+    DigestAppendable(MessageDigest digest) {
+      mDigest = digest;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      for (int i = start; i < end; i++) {
+        append(csq.charAt(i));
+      }
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+      if (mCount == mBuffer.length) {
+        mDigest.update(mBuffer, 0, mCount);
+        mCount = 0;
+      }
+      mBuffer[mCount++] = (byte) (c >> 8);
+      mBuffer[mCount++] = (byte) c;
+      return this;
+    }
+
+    /** Must be called before the digest is read. */
+    void flush() {
+      mDigest.update(mBuffer, 0, mCount);
+      mCount = 0;
+    }
+  }
+}
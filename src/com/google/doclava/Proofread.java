@@ -29,7 +29,7 @@ public class Proofread {
   static final String INDENT = "        ";
   static final String NEWLINE = "\n" + INDENT;
 
-  public static void initProofread(String filename) {
+  public static synchronized void initProofread(String filename) {
     try {
       out = new BufferedWriter(new FileWriter(filename));
       out.write("javadoc proofread file: " + filename + "\n");
@@ -44,7 +44,7 @@ public class Proofread {
     }
   }
 
-  public static void finishProofread(String filename) {
+  public static synchronized void finishProofread(String filename) {
     if (out == null) {
       return;
     }
@@ -54,7 +54,7 @@ public class Proofread {
     } catch (IOException e) {}
   }
 
-  public static void write(String s) {
+  public static synchronized void write(String s) {
     if (out == null) {
       return;
     }
@@ -63,7 +63,7 @@ public class Proofread {
     } catch (IOException e) {}
   }
 
-  public static void writeIndented(String s) {
+  public static synchronized void writeIndented(String s) {
     s = s.trim();
     Matcher m = WHITESPACE.matcher(s);
     s = m.replaceAll(NEWLINE);
@@ -72,13 +72,13 @@ public class Proofread {
     write("\n");
   }
 
-  public static void writeFileHeader(String filename) {
+  public static synchronized void writeFileHeader(String filename) {
     write("\n\n=== ");
     write(filename);
     write(" ===\n");
   }
 
-  public static void writeTagList(TagInfo[] tags) {
+  public static synchronized void writeTagList(TagInfo[] tags) {
     if (out == null) {
       return;
     }
@@ -106,7 +106,7 @@ public class Proofread {
     }
   }
 
-  public static void writePackages(String filename, TagInfo[] tags) {
+  public static synchronized void writePackages(String filename, TagInfo[] tags) {
     if (out == null) {
       return;
     }
@@ -115,7 +115,7 @@ public class Proofread {
     writeTagList(tags);
   }
 
-  public static void writePackage(String filename, TagInfo[] tags) {
+  public static synchronized void writePackage(String filename, TagInfo[] tags) {
     if (out == null) {
       return;
     }
@@ -124,7 +124,7 @@ public class Proofread {
     writeTagList(tags);
   }
 
-  public static void writeClass(String filename, ClassInfo cl) {
+  public static synchronized void writeClass(String filename, ClassInfo cl) {
     if (out == null) {
       return;
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.data.DefaultData;
+
+import java.util.ArrayList;
+
+/**
+ * The HDF that {@link TagInfo#makeHDF} writes for a list of tags, recorded once so that it can
+ * be added to any number of pages without expanding the tags again.
+ * <p>
+ * Links are written relative to the root of the docs, so what the tags write does not depend on
+ * the page. Besides the values under the base, tags may set page-wide values such as
+ * {@code toroot}; those are recorded and set again as well.
+ */
+class RenderedTags {
+  private static final String BASE = "tags";
+
+  /** Paths below the base, or page-wide paths where {@link #mUnderBase} is false. */
+  private final String[] mPaths;
+  private final String[] mValues;
+  private final boolean[] mUnderBase;
+
+  static RenderedTags of(TagInfo[] tags) {
+    Data scratch = new DefaultData();
+    TagInfo.makeHDF(scratch, BASE, tags);
+    return new RenderedTags(scratch);
+  }
+
+  static RenderedTags of(InheritedTags tags) {
+    Data scratch = new DefaultData();
+    TagInfo.makeHDF(scratch, BASE, tags);
+    return new RenderedTags(scratch);
+  }
+
+  private RenderedTags(Data scratch) {
+    ArrayList<String> paths = new ArrayList<String>();
+    ArrayList<String> values = new ArrayList<String>();
+    ArrayList<Boolean> underBase = new ArrayList<Boolean>();
+    for (Data child : scratch.getChildren()) {
+      if (BASE.equals(child.getName())) {
+        for (Data node : child.getChildren()) {
+          record(node, "." + node.getName(), true, paths, values, underBase);
+        }
+      } else {
+        record(child, child.getName(), false, paths, values, underBase);
+      }
+    }
+    mPaths = paths.toArray(new String[paths.size()]);
+    mValues = values.toArray(new String[values.size()]);
+    mUnderBase = new boolean[underBase.size()];
+    for (int i = 0; i < mUnderBase.length; i++) {
+      mUnderBase[i] = underBase.get(i);
+    }
+  }
+
+  /**
+   * Records {@code node} and its descendants in the order they were created. Nodes without a
+   * value that have children were only created for those children, so setting the children
+   * creates them again.
+   */
+  private static void record(Data node, String path, boolean underBase, ArrayList<String> paths,
+      ArrayList<String> values, ArrayList<Boolean> bases) {
+    if (node.getValue() != null || node.getChildCount() == 0) {
+      paths.add(path);
+      values.add(node.getValue());
+      bases.add(underBase);
+    }
+    for (Data child : node.getChildren()) {
+      record(child, path + "." + child.getName(), underBase, paths, values, bases);
+    }
+  }
+
+  /** Adds the recorded HDF to {@code data} under {@code base}. */
+  void makeHDF(Data data, String base) {
+    for (int i = 0; i < mPaths.length; i++) {
+      data.setValue(mUnderBase[i] ? base + mPaths[i] : mPaths[i], mValues[i]);
+    }
+  }
+}
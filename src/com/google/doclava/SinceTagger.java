@@ -17,17 +17,20 @@
 package com.google.doclava;
 
 import com.google.clearsilver.jsilver.data.Data;
-import com.google.doclava.apicheck.ApiCheck;
 import com.google.doclava.apicheck.ApiInfo;
 import com.google.doclava.apicheck.ApiParseException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 
 /**
@@ -45,6 +48,7 @@ import java.util.Map;
 public class SinceTagger {
 
   private final Map<String, String> xmlToName = new LinkedHashMap<String, String>();
+  private final Map<String, Future<ApiInfo>> xmlToApi = new HashMap<String, Future<ApiInfo>>();
 
   /**
    * Specifies the apicheck XML file and the API version it holds. Calls to this method should be
@@ -54,16 +58,30 @@ public class SinceTagger {
     xmlToName.put(file, name);
   }
 
+  /**
+   * Starts parsing the XML files of every registered version in the background. Called by
+   * {@link #tagAll}; calling it earlier lets the parsing overlap with other work.
+   */
+  public void startLoading() {
+    for (String xmlFile : xmlToName.keySet()) {
+      if (!xmlToApi.containsKey(xmlFile)) {
+        xmlToApi.put(xmlFile, ApiSpecLoader.load(xmlFile));
+      }
+    }
+  }
+
   public void tagAll(Collection<ClassInfo> classDocs) {
-    // read through the XML files in order, applying their since information
-    // to the Javadoc models
+    // the XML files are parsed concurrently, but indexed in order; each spec
+    // can be dropped as soon as it has been indexed
+    startLoading();
+    VersionIndex index = new VersionIndex();
     for (Map.Entry<String, String> versionSpec : xmlToName.entrySet()) {
       String xmlFile = versionSpec.getKey();
       String versionName = versionSpec.getValue();
 
       ApiInfo specApi;
       try {
-        specApi = new ApiCheck().parseApi(xmlFile);
+        specApi = ApiSpecLoader.get(xmlToApi.remove(xmlFile));
       } catch (ApiParseException e) {
         StringWriter stackTraceWriter = new StringWriter();
         e.printStackTrace(new PrintWriter(stackTraceWriter));
@@ -73,9 +91,11 @@ public class SinceTagger {
         continue;
       }
 
-      applyVersionsFromSpec(versionName, specApi, classDocs);
+      index.addVersion(versionName, specApi);
     }
 
+    applyVersions(index, classDocs);
+
     if (!xmlToName.isEmpty()) {
       warnForMissingVersions(classDocs);
     }
@@ -97,134 +117,217 @@ public class SinceTagger {
   }
 
   /**
-   * Applies the version information to {@code classDocs} where not already present.
-   *
-   * @param versionName the version name
-   * @param specApi the spec for this version. If a symbol is in this spec, it was present in the
-   *        named version
-   * @param classDocs the doc model to update
+   * Applies the version information in {@code index} to {@code classDocs} where not already
+   * present.
+   * <p>
+   * Each symbol gets the first version whose spec contains it, and a deprecated symbol gets
+   * the first version whose spec contains it deprecated. Inherited methods and fields are
+   * shared by every class that lists them, so they get the earliest version found through any
+   * of those classes.
    */
-  private void applyVersionsFromSpec(String versionName, ApiInfo specApi,
-      Collection<ClassInfo> classDocs) {
-    for (ClassInfo classDoc : classDocs) {
-      PackageInfo packageSpec
-          = specApi.getPackages().get(classDoc.containingPackage().name());
+  private void applyVersions(VersionIndex index, Collection<ClassInfo> classDocs) {
+    Map<DocInfo, Integer> since = new IdentityHashMap<DocInfo, Integer>();
+    Map<DocInfo, Integer> deprecatedSince = new IdentityHashMap<DocInfo, Integer>();
 
-      if (packageSpec == null) {
+    for (ClassInfo classDoc : classDocs) {
+      ClassVersions classSpec = index.find(classDoc);
+      if (classSpec == null) {
         continue;
       }
 
-      ClassInfo classSpec = packageSpec.allClasses().get(classDoc.name());
+      int first = classSpec.present.nextSetBit(0);
+      earliest(since, classDoc.containingPackage(), first);
+      earliest(since, classDoc, first);
+      if (classDoc.isDeprecated()) {
+        earliest(deprecatedSince, classDoc, classSpec.deprecatedSince);
+      }
 
-      if (classSpec == null) {
-        continue;
+      for (MethodInfo constructor : classDoc.constructors()) {
+        Versions versions = classSpec.constructors.get(constructor.getHashableName());
+        if (versions != null) {
+          earliest(since, constructor, versions.present.nextSetBit(0));
+          if (constructor.isDeprecated()) {
+            earliest(deprecatedSince, constructor, versions.deprecatedSince);
+          }
+        }
       }
 
-      versionPackage(versionName, classDoc.containingPackage());
-      versionClass(versionName, classSpec, classDoc);
-      versionConstructors(versionName, classSpec, classDoc);
-      versionFields(versionName, classSpec, classDoc);
-      versionMethods(versionName, classSpec, classDoc);
+      for (FieldInfo field : classDoc.fields()) {
+        Versions versions = classSpec.fields.get(field.name());
+        if (versions != null) {
+          earliest(since, field, versions.present.nextSetBit(0));
+          if (field.isDeprecated()) {
+            earliest(deprecatedSince, field, versions.deprecatedSince);
+          }
+        }
+      }
+
+      for (MethodInfo method : classDoc.methods()) {
+        String name = method.getHashableName();
+        if (method.isDeprecated()) {
+          Versions versions = classSpec.methods.get(name);
+          if (versions != null) {
+            earliest(deprecatedSince, method, versions.deprecatedSince);
+          }
+        }
+        earliest(since, method, index.methodSince(classSpec, name));
+      }
     }
-  }
 
-  /**
-   * Applies version information to {@code doc} where not already present.
-   */
-  private void versionPackage(String versionName, PackageInfo doc) {
-    if (doc.getSince() == null) {
-      doc.setSince(versionName);
+    for (Map.Entry<DocInfo, Integer> entry : since.entrySet()) {
+      if (entry.getKey().getSince() == null) {
+        entry.getKey().setSince(index.name(entry.getValue()));
+      }
+    }
+    for (Map.Entry<DocInfo, Integer> entry : deprecatedSince.entrySet()) {
+      if (entry.getKey().getDeprecatedSince() == null) {
+        entry.getKey().setDeprecatedSince(index.name(entry.getValue()));
+      }
     }
   }
 
-  /**
-   * Applies version information to {@code doc} where not already present.
-   */
-  private void versionClass(String versionName, ClassInfo spec, ClassInfo doc) {
-    if (doc.getSince() == null) {
-      doc.setSince(versionName);
+  private static void earliest(Map<DocInfo, Integer> versions, DocInfo doc, int version) {
+    if (version < 0) {
+      return;
     }
-
-    // Set deprecated version
-    if (doc.isDeprecated() && doc.getDeprecatedSince() == null) {
-      if (spec.isDeprecated()) {
-        doc.setDeprecatedSince(versionName);
-      }
+    Integer current = versions.get(doc);
+    if (current == null || version < current) {
+      versions.put(doc, version);
     }
   }
 
   /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
+   * Records, for every class in every spec, the versions in which it and each of its members
+   * are present. Versions are numbered in the order they were added.
    */
-  private void versionConstructors(String versionName, ClassInfo spec, ClassInfo doc) {
-    for (MethodInfo constructor : doc.constructors()) {
-      if (constructor.getSince() == null
-          && spec.hasConstructor(constructor)) {
-        constructor.setSince(versionName);
-      }
-
-      // Set deprecated version
-      if (constructor.isDeprecated() && constructor.getDeprecatedSince() == null) {
-        // Find matching field from API spec
-        if (spec.allConstructorsMap().containsKey(constructor.getHashableName())) {
-          MethodInfo specConstructor = spec.allConstructorsMap().get(constructor.getHashableName());
-          if (specConstructor.isDeprecated()) {
-            constructor.setDeprecatedSince(versionName);
+  private static class VersionIndex {
+    private final List<String> names = new ArrayList<String>();
+    /** Keyed by package name and the class's name within its package. */
+    private final Map<String, ClassVersions> classes = new HashMap<String, ClassVersions>();
+    private final Map<String, ClassVersions> classesByQualifiedName
+        = new HashMap<String, ClassVersions>();
+
+    void addVersion(String versionName, ApiInfo specApi) {
+      int version = names.size();
+      names.add(versionName);
+      for (PackageInfo packageSpec : specApi.getPackages().values()) {
+        for (Map.Entry<String, ClassInfo> entry : packageSpec.allClasses().entrySet()) {
+          ClassInfo classSpec = entry.getValue();
+          String key = packageSpec.name() + " " + entry.getKey();
+          ClassVersions versions = classes.get(key);
+          if (versions == null) {
+            versions = new ClassVersions();
+            classes.put(key, versions);
           }
+          classesByQualifiedName.put(classSpec.qualifiedName(), versions);
+          versions.add(version, classSpec);
         }
       }
     }
-  }
 
-  /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
-   */
-  private void versionFields(String versionName, ClassInfo spec, ClassInfo doc) {
-    for (FieldInfo field : doc.fields()) {
-      if (field.getSince() == null && (spec.allFields().containsKey(field.name()) ||
-                                       spec.allEnums().containsKey(field.name()))) {
-        field.setSince(versionName);
-      }
+    String name(int version) {
+      return names.get(version);
+    }
 
-      // Set deprecated version
-      if (field.isDeprecated() && field.getDeprecatedSince() == null) {
-        // Find matching field from API spec
-        if (spec.allFields().containsKey(field.name())) {
-          FieldInfo specField = spec.allFields().get(field.name());
-          if (specField.isDeprecated()) {
-            field.setDeprecatedSince(versionName);
+    ClassVersions find(ClassInfo classDoc) {
+      return classes.get(classDoc.containingPackage().name() + " " + classDoc.name());
+    }
+
+    /**
+     * Returns the first version in which the method named {@code name} is declared by the
+     * class or by one of its superclasses in that version's spec, or -1.
+     */
+    int methodSince(ClassVersions classSpec, String name) {
+      int result = -1;
+      for (Hierarchy hierarchy : classSpec.hierarchies) {
+        for (String qualifiedName : hierarchy.classes) {
+          ClassVersions superclass = classesByQualifiedName.get(qualifiedName);
+          Versions versions = superclass != null ? superclass.methods.get(name) : null;
+          if (versions == null) {
+            continue;
+          }
+          for (int v = versions.present.nextSetBit(0); v >= 0 && (result < 0 || v < result);
+              v = versions.present.nextSetBit(v + 1)) {
+            if (hierarchy.versions.get(v)) {
+              result = v;
+              break;
+            }
           }
         }
       }
+      return result;
     }
   }
 
-  /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
-   */
-  private void versionMethods(String versionName, ClassInfo spec, ClassInfo doc) {
-    for (MethodInfo method : doc.methods()) {
-
-      // Set deprecated version
-      if (method.isDeprecated() && method.getDeprecatedSince() == null) {
-        // Find matching method from API spec
-        if (spec.allMethods().containsKey(method.getHashableName())) {
-          MethodInfo specMethod = spec.allMethods().get(method.getHashableName());
-          if (specMethod.isDeprecated()) {
-            method.setDeprecatedSince(versionName);
-          }
-        }
+  /** The versions in which a class and each of its members are present. */
+  private static class ClassVersions {
+    final BitSet present = new BitSet();
+    int deprecatedSince = -1;
+    /** Superclass chains, each with the versions in which the class had it. */
+    final List<Hierarchy> hierarchies = new ArrayList<Hierarchy>(1);
+    /** Constructors and methods are keyed by their hashable names. */
+    final Map<String, Versions> constructors = new HashMap<String, Versions>();
+    /** Fields and enum constants. */
+    final Map<String, Versions> fields = new HashMap<String, Versions>();
+    /** Methods declared directly in the class. */
+    final Map<String, Versions> methods = new HashMap<String, Versions>();
+
+    void add(int version, ClassInfo classSpec) {
+      present.set(version);
+      if (classSpec.isDeprecated() && deprecatedSince < 0) {
+        deprecatedSince = version;
       }
 
-      if (method.getSince() != null) {
-        continue;
+      List<String> chain = new ArrayList<String>();
+      for (ClassInfo superclass : classSpec.hierarchy()) {
+        chain.add(superclass.qualifiedName());
       }
+      Hierarchy hierarchy = hierarchies.isEmpty() ? null : hierarchies.get(hierarchies.size() - 1);
+      if (hierarchy == null || !hierarchy.classes.equals(chain)) {
+        hierarchy = new Hierarchy(chain);
+        hierarchies.add(hierarchy);
+      }
+      hierarchy.versions.set(version);
 
-      for (ClassInfo superclass : spec.hierarchy()) {
-        if (superclass.allMethods().containsKey(method.getHashableName())) {
-          method.setSince(versionName);
-          break;
-        }
+      for (Map.Entry<String, MethodInfo> entry : classSpec.allConstructorsMap().entrySet()) {
+        Versions.add(constructors, entry.getKey(), version, entry.getValue().isDeprecated());
+      }
+      for (Map.Entry<String, FieldInfo> entry : classSpec.allFields().entrySet()) {
+        Versions.add(fields, entry.getKey(), version, entry.getValue().isDeprecated());
+      }
+      for (String name : classSpec.allEnums().keySet()) {
+        // Deprecated enum constants never set a field's deprecated version.
+        Versions.add(fields, name, version, false);
+      }
+      for (Map.Entry<String, MethodInfo> entry : classSpec.allMethods().entrySet()) {
+        Versions.add(methods, entry.getKey(), version, entry.getValue().isDeprecated());
+      }
+    }
+  }
+
+  private static class Hierarchy {
+    final List<String> classes;
+    final BitSet versions = new BitSet();
+
+    Hierarchy(List<String> classes) {
+      this.classes = classes;
+    }
+  }
+
+  /** The versions in which a member is present, and the first in which it is deprecated. */
+  private static class Versions {
+    final BitSet present = new BitSet();
+    int deprecatedSince = -1;
+
+    static void add(Map<String, Versions> all, String name, int version, boolean deprecated) {
+      Versions versions = all.get(name);
+      if (versions == null) {
+        versions = new Versions();
+        all.put(name, versions);
+      }
+      versions.present.set(version);
+      if (deprecated && versions.deprecatedSince < 0) {
+        versions.deprecatedSince = version;
       }
     }
   }
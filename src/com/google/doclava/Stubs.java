@@ -30,17 +30,27 @@ import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -163,9 +173,10 @@ public class Stubs {
     }
     // If a class is public or protected, not hidden, not imported and marked as included,
     // then we can't strip it
+    NotStrippableWalker walker = new NotStrippableWalker(notStrippable, stubImportPackages);
     for (ClassInfo cl : all) {
       if (cl.checkLevel() && cl.isIncluded()) {
-        cantStripThis(cl, notStrippable, "0:0", stubImportPackages);
+        walker.walk(cl, "0:0");
       }
     }
 
@@ -251,29 +262,43 @@ public class Stubs {
 
     // packages contains all the notStrippable classes mapped by their containing packages
     HashMap<PackageInfo, List<ClassInfo>> packages = new HashMap<PackageInfo, List<ClassInfo>>();
+    StubFileWriter stubWriter =
+        stubsDir != null ? new StubFileWriter(stubsDir, Doclava.stubThreads) : null;
     final HashSet<Pattern> stubPackageWildcards = extractWildcards(stubPackages);
-    for (ClassInfo cl : notStrippable) {
-      if (!cl.isDocOnly()) {
-        if (stubSourceOnly && !Files.exists(Paths.get(cl.position().file))) {
-          continue;
-        }
-        if (shouldWriteStub(cl.containingPackage().name(), stubPackages, stubPackageWildcards)) {
-          // write out the stubs
-          if (stubsDir != null) {
-            writeClassFile(stubsDir, notStrippable, cl, keepStubComments);
+    try {
+      for (ClassInfo cl : notStrippable) {
+        if (!cl.isDocOnly()) {
+          if (stubSourceOnly && !Files.exists(Paths.get(cl.position().file))) {
+            continue;
           }
-          // build class list for api file or keep list file
-          if (apiWriter != null || dexApiWriter != null || keepListWriter != null) {
-            if (packages.containsKey(cl.containingPackage())) {
-              packages.get(cl.containingPackage()).add(cl);
-            } else {
-              ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
-              classes.add(cl);
-              packages.put(cl.containingPackage(), classes);
+          if (shouldWriteStub(cl.containingPackage().name(), stubPackages, stubPackageWildcards)) {
+            // write out the stubs
+            if (stubWriter != null) {
+              stubWriter.write(notStrippable, cl, keepStubComments);
+            }
+            // build class list for api file or keep list file
+            if (apiWriter != null || dexApiWriter != null || keepListWriter != null) {
+              if (packages.containsKey(cl.containingPackage())) {
+                packages.get(cl.containingPackage()).add(cl);
+              } else {
+                ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
+                classes.add(cl);
+                packages.put(cl.containingPackage(), classes);
+              }
             }
           }
         }
       }
+    } catch (Throwable t) {
+      // don't leave the pool's threads running, or lose what its writes failed with
+      if (stubWriter != null) {
+        stubWriter.abort(t);
+      }
+      throw t;
+    }
+
+    if (stubWriter != null) {
+      stubWriter.finish();
     }
 
     if (privateApiWriter != null || privateDexApiWriter != null || removedApiWriter != null
@@ -289,67 +314,74 @@ public class Stubs {
 
     Predicate<MemberInfo> memberIsNotCloned = (x -> !x.isCloned());
 
-    FilterPredicate apiFilter = new FilterPredicate(new ApiPredicate().setIgnoreShown(ignoreShown));
+    // Each predicate remembers its result for every member, and the filters are shared by
+    // several outputs, so a member is only tested once per predicate.
+    ApiPredicate apiPredicate = new ApiPredicate().setIgnoreShown(ignoreShown);
+    FilterPredicate apiFilter = new FilterPredicate(apiPredicate);
     ApiPredicate apiReference = new ApiPredicate().setIgnoreShown(true);
-    Predicate<MemberInfo> apiEmit = apiFilter.and(new ElidingPredicate(apiReference));
+    ElidingPredicate apiEliding = new ElidingPredicate(apiReference);
+    Predicate<MemberInfo> apiEmit = apiFilter.and(apiEliding);
     Predicate<MemberInfo> dexApiEmit = memberIsNotCloned.and(apiFilter);
 
     Predicate<MemberInfo> privateEmit = memberIsNotCloned.and(apiFilter.negate());
     Predicate<MemberInfo> privateReference = (x -> true);
 
-    FilterPredicate removedFilter =
-        new FilterPredicate(new ApiPredicate().setIgnoreShown(ignoreShown).setMatchRemoved(true));
+    ApiPredicate removedPredicate =
+        new ApiPredicate().setIgnoreShown(ignoreShown).setMatchRemoved(true);
+    FilterPredicate removedFilter = new FilterPredicate(removedPredicate);
     ApiPredicate removedReference = new ApiPredicate().setIgnoreShown(true).setIgnoreRemoved(true);
-    Predicate<MemberInfo> removedEmit = removedFilter.and(new ElidingPredicate(removedReference));
+    ElidingPredicate removedEliding = new ElidingPredicate(removedReference);
+    Predicate<MemberInfo> removedEmit = removedFilter.and(removedEliding);
     Predicate<MemberInfo> removedDexEmit = memberIsNotCloned.and(removedFilter);
 
-    // Write out the current API
+    // Write out the current API, DEX API and keep list in one pass
+    ApiWriter currentApis = new ApiWriter();
     if (apiWriter != null) {
-      writeApi(apiWriter, packages, apiEmit, apiReference);
-      apiWriter.close();
+      currentApis.add(new TextApiSink(apiWriter, apiEmit, apiReference));
     }
-
-    // Write out the current DEX API
     if (dexApiWriter != null) {
-      writeDexApi(dexApiWriter, packages, dexApiEmit);
-      dexApiWriter.close();
+      currentApis.add(new DexApiSink(dexApiWriter, dexApiEmit));
     }
-
-    // Write out the keep list
     if (keepListWriter != null) {
-      writeKeepList(keepListWriter, packages, notStrippable);
-      keepListWriter.close();
+      currentApis.add(new KeepListSink(keepListWriter, notStrippable));
     }
+    currentApis.write(packages);
 
-    // Write out the private API
+    // Write out the private, removed and mapping outputs in one pass over all classes
+    ApiWriter allApis = new ApiWriter();
     if (privateApiWriter != null) {
-      writeApi(privateApiWriter, allClassesByPackage, privateEmit, privateReference);
-      privateApiWriter.close();
+      allApis.add(new TextApiSink(privateApiWriter, privateEmit, privateReference));
     }
-
-    // Write out the private API
     if (privateDexApiWriter != null) {
-      writeDexApi(privateDexApiWriter, allClassesByPackage, privateEmit);
-      privateDexApiWriter.close();
+      allApis.add(new DexApiSink(privateDexApiWriter, privateEmit));
     }
-
-    // Write out the API mapping
     if (apiMappingWriter != null) {
-      writeApiMapping(apiMappingWriter, allClassesByPackage);
-      apiMappingWriter.close();
+      allApis.add(new ApiMappingSink(apiMappingWriter));
     }
-
-    // Write out the removed API
     if (removedApiWriter != null) {
-      writeApi(removedApiWriter, allClassesByPackage, removedEmit, removedReference);
-      removedApiWriter.close();
+      allApis.add(new TextApiSink(removedApiWriter, removedEmit, removedReference));
     }
-
-    // Write out the removed DEX API
     if (removedDexApiWriter != null) {
-      writeDexApi(removedDexApiWriter, allClassesByPackage, removedDexEmit);
-      removedDexApiWriter.close();
+      allApis.add(new DexApiSink(removedDexApiWriter, removedDexEmit));
     }
+    allApis.write(allClassesByPackage);
+
+    for (PrintStream writer : Arrays.asList(apiWriter, dexApiWriter, keepListWriter,
+        privateApiWriter, privateDexApiWriter, apiMappingWriter, removedApiWriter,
+        removedDexApiWriter)) {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+
+    MemoizedPredicate.printStats("api", apiPredicate);
+    MemoizedPredicate.printStats("api filter", apiFilter);
+    MemoizedPredicate.printStats("api reference", apiReference);
+    MemoizedPredicate.printStats("api eliding", apiEliding);
+    MemoizedPredicate.printStats("removed", removedPredicate);
+    MemoizedPredicate.printStats("removed filter", removedFilter);
+    MemoizedPredicate.printStats("removed reference", removedReference);
+    MemoizedPredicate.printStats("removed eliding", removedEliding);
   }
 
   private static boolean shouldWriteStub(final String packageName,
@@ -429,128 +461,141 @@ public class Stubs {
 
   public static void cantStripThis(ClassInfo cl, HashSet<ClassInfo> notStrippable, String why,
       HashSet<String> stubImportPackages) {
+    new NotStrippableWalker(notStrippable, stubImportPackages).walk(cl, why);
+  }
 
-    if (stubImportPackages != null
-        && stubImportPackages.contains(cl.containingPackage().qualifiedName())) {
-      // if the package is imported then it does not need stubbing.
-      return;
-    }
+  /**
+   * Adds a class, and everything its API refers to, to a set of classes that can't be stripped
+   * from the stubs: the types of its fields, the parameter, return, thrown and type parameter
+   * types of its methods and constructors, its type arguments, its containing class and its
+   * superclass. Classes in {@code stubImportPackages} don't need stubbing and are skipped.
+   * <p>
+   * Classes are visited in the same depth-first order as a recursive walk, so each one's
+   * {@link ClassInfo#setReasonIncluded reason} is the first reference found to it, but from a
+   * worklist instead of the stack. Classes already seen are kept as bits indexed by
+   * {@link ClassInfo#id()}, which saves hashing their names for every reference; the set is
+   * only consulted the first time each instance is reached.
+   */
+  private static class NotStrippableWalker {
+    private final HashSet<ClassInfo> mNotStrippable;
+    private final HashSet<String> mStubImportPackages;
+    private final BitSet mSeen = new BitSet();
+    private final ArrayDeque<Reference> mPending = new ArrayDeque<Reference>();
+    private final ArrayList<Reference> mFound = new ArrayList<Reference>();
+
+    NotStrippableWalker(HashSet<ClassInfo> notStrippable, HashSet<String> stubImportPackages) {
+      mNotStrippable = notStrippable;
+      mStubImportPackages = stubImportPackages;
+    }
+
+    void walk(ClassInfo cl, String why) {
+      mPending.push(new Reference(cl, why));
+      while (!mPending.isEmpty()) {
+        Reference ref = mPending.pop();
+        ClassInfo next = ref.cl;
+        if (mSeen.get(next.id())) {
+          continue;
+        }
+        mSeen.set(next.id());
 
-    if (!notStrippable.add(cl)) {
-      // slight optimization: if it already contains cl, it already contains
-      // all of cl's parents
-      return;
+        if (mStubImportPackages != null
+            && mStubImportPackages.contains(next.containingPackage().qualifiedName())) {
+          // if the package is imported then it does not need stubbing.
+          continue;
+        }
+        if (!mNotStrippable.add(next)) {
+          // another instance of the same class is already in; it brought in the rest
+          continue;
+        }
+        next.setReasonIncluded(ref.why());
+
+        visit(next);
+        // push in reverse so the first reference found is the next one walked
+        for (int i = mFound.size() - 1; i >= 0; i--) {
+          mPending.push(mFound.get(i));
+        }
+        mFound.clear();
+      }
     }
-    cl.setReasonIncluded(why);
 
-    // cant strip annotations
-    /*
-     * if (cl.annotations() != null){ for (AnnotationInstanceInfo ai : cl.annotations()){ if
-     * (ai.type() != null){ cantStripThis(ai.type(), notStrippable, "1:" + cl.qualifiedName()); } }
-     * }
-     */
-    // cant strip any public fields or their generics
-    if (cl.selfFields() != null) {
-      for (FieldInfo fInfo : cl.selfFields()) {
-        if (fInfo.type() != null) {
-          if (fInfo.type().asClassInfo() != null) {
-            cantStripThis(fInfo.type().asClassInfo(), notStrippable, "2:" + cl.qualifiedName(),
-                stubImportPackages);
-          }
-          if (fInfo.type().typeArguments() != null) {
-            for (TypeInfo tTypeInfo : fInfo.type().typeArguments()) {
-              if (tTypeInfo.asClassInfo() != null) {
-                cantStripThis(tTypeInfo.asClassInfo(), notStrippable, "3:" + cl.qualifiedName(),
-                    stubImportPackages);
+    /** Collects the classes {@code cl} refers to into {@link #mFound}, in walk order. */
+    private void visit(ClassInfo cl) {
+      // cant strip any public fields or their generics
+      if (cl.selfFields() != null) {
+        for (FieldInfo fInfo : cl.selfFields()) {
+          if (fInfo.type() != null) {
+            found(fInfo.type().asClassInfo(), "2:", cl, null);
+            if (fInfo.type().typeArguments() != null) {
+              for (TypeInfo tTypeInfo : fInfo.type().typeArguments()) {
+                found(tTypeInfo.asClassInfo(), "3:", cl, null);
               }
             }
           }
         }
       }
-    }
-    // cant strip any of the type's generics
-    if (cl.asTypeInfo() != null) {
-      if (cl.asTypeInfo().typeArguments() != null) {
-        for (TypeInfo tInfo : cl.asTypeInfo().typeArguments()) {
-          if (tInfo.asClassInfo() != null) {
-            cantStripThis(tInfo.asClassInfo(), notStrippable, "4:" + cl.qualifiedName(),
-                stubImportPackages);
+      // cant strip any of the type's generics
+      if (cl.asTypeInfo() != null) {
+        if (cl.asTypeInfo().typeArguments() != null) {
+          for (TypeInfo tInfo : cl.asTypeInfo().typeArguments()) {
+            found(tInfo.asClassInfo(), "4:", cl, null);
           }
         }
       }
-    }
-    // cant strip any of the annotation elements
-    // cantStripThis(cl.annotationElements(), notStrippable);
-    // take care of methods
-    cantStripThis(cl.allSelfMethods(), notStrippable, stubImportPackages);
-    cantStripThis(cl.allConstructors(), notStrippable, stubImportPackages);
-    // blow the outer class open if this is an inner class
-    if (cl.containingClass() != null) {
-      cantStripThis(cl.containingClass(), notStrippable, "5:" + cl.qualifiedName(),
-          stubImportPackages);
-    }
-    // blow open super class and interfaces
-    ClassInfo supr = cl.realSuperclass();
-    if (supr != null) {
-      if (supr.isHiddenOrRemoved()) {
-        // cl is a public class declared as extending a hidden superclass.
-        // this is not a desired practice but it's happened, so we deal
-        // with it by finding the first super class which passes checklevel for purposes of
-        // generating the doc & stub information, and proceeding normally.
-        ClassInfo publicSuper = cl.superclass();
-        cl.init(cl.asTypeInfo(), cl.realInterfaces(), cl.realInterfaceTypes(), cl.innerClasses(),
-            cl.allConstructors(), cl.allSelfMethods(), cl.annotationElements(), cl.allSelfFields(),
-            cl.enumConstants(), cl.containingPackage(), cl.containingClass(),
-            publicSuper, publicSuper.asTypeInfo(), cl.annotations());
-        Errors.error(Errors.HIDDEN_SUPERCLASS, cl.position(), "Public class " + cl.qualifiedName()
-            + " stripped of unavailable superclass " + supr.qualifiedName());
-      } else {
-        cantStripThis(supr, notStrippable, "6:" + cl.realSuperclass().name() + cl.qualifiedName(),
-            stubImportPackages);
-        if (supr.isPrivate()) {
-          Errors.error(Errors.PRIVATE_SUPERCLASS, cl.position(), "Public class "
-              + cl.qualifiedName() + " extends private class " + supr.qualifiedName());
+      // take care of methods
+      visit(cl.allSelfMethods());
+      visit(cl.allConstructors());
+      // blow the outer class open if this is an inner class
+      found(cl.containingClass(), "5:", cl, null);
+      // blow open super class and interfaces
+      ClassInfo supr = cl.realSuperclass();
+      if (supr != null) {
+        if (supr.isHiddenOrRemoved()) {
+          // cl is a public class declared as extending a hidden superclass.
+          // this is not a desired practice but it's happened, so we deal
+          // with it by finding the first super class which passes checklevel for purposes of
+          // generating the doc & stub information, and proceeding normally.
+          ClassInfo publicSuper = cl.superclass();
+          cl.init(cl.asTypeInfo(), cl.realInterfaces(), cl.realInterfaceTypes(), cl.innerClasses(),
+              cl.allConstructors(), cl.allSelfMethods(), cl.annotationElements(), cl.allSelfFields(),
+              cl.enumConstants(), cl.containingPackage(), cl.containingClass(),
+              publicSuper, publicSuper.asTypeInfo(), cl.annotations());
+          Errors.error(Errors.HIDDEN_SUPERCLASS, cl.position(), "Public class " + cl.qualifiedName()
+              + " stripped of unavailable superclass " + supr.qualifiedName());
+        } else {
+          found(supr, "6:" + supr.name(), cl, null);
+          if (supr.isPrivate()) {
+            Errors.error(Errors.PRIVATE_SUPERCLASS, cl.position(), "Public class "
+                + cl.qualifiedName() + " extends private class " + supr.qualifiedName());
+          }
         }
       }
     }
-  }
 
-  private static void cantStripThis(ArrayList<MethodInfo> mInfos, HashSet<ClassInfo> notStrippable,
-      HashSet<String> stubImportPackages) {
-    // for each method, blow open the parameters, throws and return types. also blow open their
-    // generics
-    if (mInfos != null) {
+    private void visit(ArrayList<MethodInfo> mInfos) {
+      // for each method, blow open the parameters, throws and return types. also blow open their
+      // generics
+      if (mInfos == null) {
+        return;
+      }
       for (MethodInfo mInfo : mInfos) {
         if (mInfo.getTypeParameters() != null) {
           for (TypeInfo tInfo : mInfo.getTypeParameters()) {
-            if (tInfo.asClassInfo() != null) {
-              cantStripThis(tInfo.asClassInfo(), notStrippable, "8:"
-                  + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name(),
-                  stubImportPackages);
-            }
+            found(tInfo.asClassInfo(), "8:", null, mInfo);
           }
         }
         if (mInfo.parameters() != null) {
           for (ParameterInfo pInfo : mInfo.parameters()) {
             if (pInfo.type() != null && pInfo.type().asClassInfo() != null) {
-              cantStripThis(pInfo.type().asClassInfo(), notStrippable, "9:"
-                  + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name(),
-                  stubImportPackages);
+              found(pInfo.type().asClassInfo(), "9:", null, mInfo);
               if (pInfo.type().typeArguments() != null) {
                 for (TypeInfo tInfoType : pInfo.type().typeArguments()) {
-                  if (tInfoType.asClassInfo() != null) {
-                    ClassInfo tcl = tInfoType.asClassInfo();
-                    if (tcl.isHiddenOrRemoved()) {
-                      Errors
-                          .error(Errors.UNAVAILABLE_SYMBOL, mInfo.position(),
-                              "Parameter of hidden type " + tInfoType.fullName() + " in "
-                                  + mInfo.containingClass().qualifiedName() + '.' + mInfo.name()
-                                  + "()");
-                    } else {
-                      cantStripThis(tcl, notStrippable, "10:"
-                          + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name(),
-                          stubImportPackages);
-                    }
+                  ClassInfo tcl = tInfoType.asClassInfo();
+                  if (tcl != null && tcl.isHiddenOrRemoved()) {
+                    Errors.error(Errors.UNAVAILABLE_SYMBOL, mInfo.position(),
+                        "Parameter of hidden type " + tInfoType.fullName() + " in "
+                        + mInfo.containingClass().qualifiedName() + '.' + mInfo.name() + "()");
+                  } else {
+                    found(tcl, "10:", null, mInfo);
                   }
                 }
               }
@@ -558,25 +603,55 @@ public class Stubs {
           }
         }
         for (ClassInfo thrown : mInfo.thrownExceptions()) {
-          cantStripThis(thrown, notStrippable, "11:" + mInfo.realContainingClass().qualifiedName()
-              + ":" + mInfo.name(), stubImportPackages);
+          found(thrown, "11:", null, mInfo);
         }
         if (mInfo.returnType() != null && mInfo.returnType().asClassInfo() != null) {
-          cantStripThis(mInfo.returnType().asClassInfo(), notStrippable, "12:"
-              + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name(),
-              stubImportPackages);
+          found(mInfo.returnType().asClassInfo(), "12:", null, mInfo);
           if (mInfo.returnType().typeArguments() != null) {
             for (TypeInfo tyInfo : mInfo.returnType().typeArguments()) {
-              if (tyInfo.asClassInfo() != null) {
-                cantStripThis(tyInfo.asClassInfo(), notStrippable, "13:"
-                    + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name(),
-                    stubImportPackages);
-              }
+              found(tyInfo.asClassInfo(), "13:", null, mInfo);
             }
           }
         }
       }
     }
+
+    private void found(ClassInfo cl, String kind, ClassInfo from, MethodInfo method) {
+      if (cl != null && !mSeen.get(cl.id())) {
+        mFound.add(new Reference(cl, kind, from, method));
+      }
+    }
+  }
+
+  /**
+   * A class reached by {@link NotStrippableWalker}, and why. The reason is only spelled out for
+   * the reference that actually includes the class.
+   */
+  private static class Reference {
+    final ClassInfo cl;
+    private final String kind;
+    private final ClassInfo from;
+    private final MethodInfo method;
+
+    Reference(ClassInfo cl, String why) {
+      this(cl, why, null, null);
+    }
+
+    Reference(ClassInfo cl, String kind, ClassInfo from, MethodInfo method) {
+      this.cl = cl;
+      this.kind = kind;
+      this.from = from;
+      this.method = method;
+    }
+
+    String why() {
+      if (method != null) {
+        return kind + method.realContainingClass().qualifiedName() + ":" + method.name();
+      } else if (from != null) {
+        return kind + from.qualifiedName();
+      }
+      return kind;
+    }
   }
 
   static String javaFileName(ClassInfo cl) {
@@ -590,15 +665,7 @@ public class Stubs {
   }
 
   static void writeClassFile(String stubsDir, HashSet<ClassInfo> notStrippable, ClassInfo cl, boolean keepStubComments) {
-    // inner classes are written by their containing class
-    if (cl.containingClass() != null) {
-      return;
-    }
-
-    // Work around the bogus "Array" class we invent for
-    // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
-    if (cl.containingPackage() != null
-        && cl.containingPackage().name().equals(PackageInfo.DEFAULT_PACKAGE)) {
+    if (!hasClassFile(cl)) {
       return;
     }
 
@@ -619,6 +686,134 @@ public class Stubs {
     }
   }
 
+  /** Whether {@code cl} gets a stub file of its own. */
+  private static boolean hasClassFile(ClassInfo cl) {
+    // inner classes are written by their containing class
+    if (cl.containingClass() != null) {
+      return false;
+    }
+
+    // Work around the bogus "Array" class we invent for
+    // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
+    if (cl.containingPackage() != null
+        && cl.containingPackage().name().equals(PackageInfo.DEFAULT_PACKAGE)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes stub files for {@link #writeStubsAndApi}, using a pool of threads when asked to.
+   * <p>
+   * Writing a stub reads and updates the doc model (hidden methods that must be written are
+   * added to their class), so the stub source is still generated on the calling thread, in
+   * the same order as the serial path. Only reading the license header from the original
+   * source and writing the file are handed to the pool, so the stubs are byte-identical either
+   * way. The work queue is bounded so that at most a few stubs are held in memory at once.
+   */
+  private static class StubFileWriter {
+    private final String mStubsDir;
+    private final ThreadPoolExecutor mExecutor;
+    private final List<Future<?>> mPending = new ArrayList<Future<?>>();
+
+    StubFileWriter(String stubsDir, int threads) {
+      mStubsDir = stubsDir;
+      if (threads > 1) {
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(threads * 2),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+      } else {
+        mExecutor = null;
+      }
+    }
+
+    void write(HashSet<ClassInfo> notStrippable, ClassInfo cl, boolean keepStubComments) {
+      if (mExecutor == null) {
+        writeClassFile(mStubsDir, notStrippable, cl, keepStubComments);
+        return;
+      }
+      if (!hasClassFile(cl)) {
+        return;
+      }
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      PrintStream stream = new PrintStream(body);
+      PackageInfo pkg = cl.containingPackage();
+      if (pkg != null) {
+        stream.println("package " + pkg.name() + ";");
+      }
+      writeClass(stream, notStrippable, cl, keepStubComments);
+      stream.flush();
+
+      final SourcePositionInfo position = cl.position();
+      final String filename = mStubsDir + '/' + javaFileName(cl);
+      mPending.add(mExecutor.submit(() -> {
+        String header = parseLicenseHeader(position);
+        File file = new File(filename);
+        ClearPage.ensureDirectory(file);
+        PrintStream out = null;
+        try {
+          out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+          out.print(header);
+          byte[] bytes = body.toByteArray();
+          out.write(bytes, 0, bytes.length);
+        } catch (FileNotFoundException e) {
+          System.err.println("error writing file: " + filename);
+        } finally {
+          if (out != null) {
+            out.close();
+          }
+        }
+      }));
+    }
+
+    /** Waits for every stub file to be written. */
+    void finish() {
+      if (mExecutor == null) {
+        return;
+      }
+      try {
+        for (Future<?> f : mPending) {
+          f.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("interrupted while writing stubs", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new RuntimeException(cause);
+      } finally {
+        mExecutor.shutdown();
+      }
+    }
+
+    /**
+     * Shuts the pool down after the stubs could not all be queued because of {@code failure}.
+     * Files already queued are still written, and any of them that fail are added to
+     * {@code failure} as suppressed exceptions.
+     */
+    void abort(Throwable failure) {
+      if (mExecutor == null) {
+        return;
+      }
+      mExecutor.shutdown();
+      for (Future<?> f : mPending) {
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failure.addSuppressed(e);
+          return;
+        } catch (ExecutionException e) {
+          failure.addSuppressed(e.getCause());
+        }
+      }
+    }
+  }
+
   static void writeClassFile(PrintStream stream, HashSet<ClassInfo> notStrippable, ClassInfo cl, boolean keepStubComments) {
     PackageInfo pkg = cl.containingPackage();
     if (cl.containingClass() == null) {
@@ -630,11 +825,19 @@ public class Stubs {
     writeClass(stream, notStrippable, cl, keepStubComments);
   }
 
+  /** License headers already read, by source file. */
+  private static final Map<String, String> sLicenseHeaders =
+      new ConcurrentHashMap<String, String>();
+
   private static String parseLicenseHeader(/* @Nonnull */ SourcePositionInfo positionInfo) {
     if (positionInfo == null) {
       throw new NullPointerException("positionInfo == null");
     }
 
+    String header = sLicenseHeaders.get(positionInfo.file);
+    if (header != null) {
+      return header;
+    }
     try {
       final File sourceFile = new File(positionInfo.file);
       if (!sourceFile.exists()) {
@@ -643,10 +846,12 @@ public class Stubs {
                 "that isn't present in the list of input source files but exists in the input " +
                 "classpath.");
       }
-      return parseLicenseHeader(new FileInputStream(sourceFile));
+      header = parseLicenseHeader(new FileInputStream(sourceFile));
     } catch (IOException ioe) {
       throw new RuntimeException("Unable to parse license header for: " + positionInfo.file, ioe);
     }
+    sLicenseHeaders.put(positionInfo.file, header);
+    return header;
   }
 
   /* @VisibleForTesting */
@@ -1324,12 +1529,55 @@ public class Stubs {
     return returnString;
   }
 
+  /**
+   * A predicate over members that remembers its result for each member it has tested, for as
+   * long as the predicate lives. The API writers test the same members, and the ancestors of
+   * every method, many times over; the model doesn't change while they run, so each result is
+   * only computed once.
+   * <p>
+   * Members are keyed by identity. {@link ClassInfo#asMemberInfo()} returns a new object on
+   * every call, so those are keyed by their class instead.
+   */
+  public abstract static class MemoizedPredicate implements Predicate<MemberInfo> {
+    private final Map<Object, Boolean> mResults = new IdentityHashMap<Object, Boolean>();
+    private long mHits;
+    private long mMisses;
+
+    @Override
+    public final boolean test(MemberInfo member) {
+      Object key = member instanceof ClassInfo.ClassMemberInfo ? member.containingClass() : member;
+      Boolean result = mResults.get(key);
+      if (result != null) {
+        mHits++;
+        return result;
+      }
+      mMisses++;
+      result = compute(member);
+      mResults.put(key, result);
+      return result;
+    }
+
+    protected abstract boolean compute(MemberInfo member);
+
+    /** Forgets every result, for when the predicate's configuration changes. */
+    protected void clear() {
+      mResults.clear();
+    }
+
+    static void printStats(String name, MemoizedPredicate predicate) {
+      if (predicate.mHits + predicate.mMisses > 0) {
+        System.out.println("Predicate cache (" + name + "): " + predicate.mHits + " hits, "
+            + predicate.mMisses + " misses");
+      }
+    }
+  }
+
   /**
    * Predicate that decides if the given member should be considered part of an
    * API surface area. To make the most accurate decision, it searches for
    * signals on the member, all containing classes, and all containing packages.
    */
-  public static class ApiPredicate implements Predicate<MemberInfo> {
+  public static class ApiPredicate extends MemoizedPredicate {
     public boolean ignoreShown;
     public boolean ignoreRemoved;
     public boolean matchRemoved;
@@ -1344,6 +1592,7 @@ public class Stubs {
      */
     public ApiPredicate setIgnoreShown(boolean ignoreShown) {
       this.ignoreShown = ignoreShown;
+      clear();
       return this;
     }
 
@@ -1357,6 +1606,7 @@ public class Stubs {
      */
     public ApiPredicate setIgnoreRemoved(boolean ignoreRemoved) {
       this.ignoreRemoved = ignoreRemoved;
+      clear();
       return this;
     }
 
@@ -1369,6 +1619,7 @@ public class Stubs {
      */
     public ApiPredicate setMatchRemoved(boolean matchRemoved) {
       this.matchRemoved = matchRemoved;
+      clear();
       return this;
     }
 
@@ -1383,8 +1634,31 @@ public class Stubs {
       }
     }
 
+    private static final int PACKAGE_HIDDEN = 1;
+    private static final int PACKAGE_DOC_ONLY = 2;
+    private static final int PACKAGE_REMOVED = 4;
+
+    /** The hidden, doc-only and removed state of each package and its parents, as flags. */
+    private final Map<PackageInfo, Integer> mPackageFlags =
+        new IdentityHashMap<PackageInfo, Integer>();
+
+    private int packageFlags(PackageInfo pkg) {
+      Integer flags = mPackageFlags.get(pkg);
+      if (flags == null) {
+        int f = 0;
+        for (PackageInfo p = pkg; p != null; p = containingPackage(p)) {
+          f |= (p.isHidden() ? PACKAGE_HIDDEN : 0)
+              | (p.isDocOnly() ? PACKAGE_DOC_ONLY : 0)
+              | (p.isRemoved() ? PACKAGE_REMOVED : 0);
+        }
+        flags = f;
+        mPackageFlags.put(pkg, flags);
+      }
+      return flags;
+    }
+
     @Override
-    public boolean test(MemberInfo member) {
+    protected boolean compute(MemberInfo member) {
       boolean visible = member.isPublic() || member.isProtected();
       boolean hasShowAnnotation = member.hasShowAnnotation();
       boolean hidden = member.isHidden();
@@ -1394,11 +1668,11 @@ public class Stubs {
       ClassInfo clazz = member.containingClass();
       if (clazz != null) {
         PackageInfo pkg = clazz.containingPackage();
-        while (pkg != null) {
-          hidden |= pkg.isHidden();
-          docOnly |= pkg.isDocOnly();
-          removed |= pkg.isRemoved();
-          pkg = containingPackage(pkg);
+        if (pkg != null) {
+          int flags = packageFlags(pkg);
+          hidden |= (flags & PACKAGE_HIDDEN) != 0;
+          docOnly |= (flags & PACKAGE_DOC_ONLY) != 0;
+          removed |= (flags & PACKAGE_REMOVED) != 0;
         }
       }
       while (clazz != null) {
@@ -1425,7 +1699,7 @@ public class Stubs {
    * Filter that will elide exact duplicate members that are already included
    * in another superclass/interfaces.
    */
-  public static class ElidingPredicate implements Predicate<MemberInfo> {
+  public static class ElidingPredicate extends MemoizedPredicate {
     private final Predicate<MemberInfo> wrapped;
 
     public ElidingPredicate(Predicate<MemberInfo> wrapped) {
@@ -1433,7 +1707,7 @@ public class Stubs {
     }
 
     @Override
-    public boolean test(MemberInfo member) {
+    protected boolean compute(MemberInfo member) {
       // This member should be included, but if it's an exact duplicate
       // override then we can elide it.
       if (member instanceof MethodInfo) {
@@ -1454,7 +1728,7 @@ public class Stubs {
     }
   }
 
-  public static class FilterPredicate implements Predicate<MemberInfo> {
+  public static class FilterPredicate extends MemoizedPredicate {
     private final Predicate<MemberInfo> wrapped;
 
     public FilterPredicate(Predicate<MemberInfo> wrapped) {
@@ -1462,7 +1736,7 @@ public class Stubs {
     }
 
     @Override
-    public boolean test(MemberInfo member) {
+    protected boolean compute(MemberInfo member) {
       if (wrapped.test(member)) {
         return true;
       } else if (member instanceof MethodInfo) {
@@ -1477,77 +1751,203 @@ public class Stubs {
 
   static void writeApi(PrintStream apiWriter, Map<PackageInfo, List<ClassInfo>> classesByPackage,
       Predicate<MemberInfo> filterEmit, Predicate<MemberInfo> filterReference) {
-    for (PackageInfo pkg : classesByPackage.keySet().stream().sorted(PackageInfo.comparator)
-        .collect(Collectors.toList())) {
-      if (pkg.name().equals(PackageInfo.DEFAULT_PACKAGE)) continue;
+    new ApiWriter().add(new TextApiSink(apiWriter, filterEmit, filterReference))
+        .write(classesByPackage);
+  }
 
-      boolean hasWrittenPackageHead = false;
-      for (ClassInfo clazz : classesByPackage.get(pkg).stream().sorted(ClassInfo.comparator)
+  static void writeDexApi(PrintStream apiWriter, Map<PackageInfo, List<ClassInfo>> classesByPackage,
+      Predicate<MemberInfo> filterEmit) {
+    new ApiWriter().add(new DexApiSink(apiWriter, filterEmit)).write(classesByPackage);
+  }
+
+  static void writeApiMapping(PrintStream mappingWriter,
+      Map<PackageInfo, List<ClassInfo>> classesByPackage) {
+    new ApiWriter().add(new ApiMappingSink(mappingWriter)).write(classesByPackage);
+  }
+
+  /**
+   * Writes any number of API outputs in a single pass over the same classes. Packages, classes
+   * and each class's exhaustive members are sorted once and handed to every {@link ApiSink} in
+   * turn, so a sink writes exactly what it would have written in a pass of its own.
+   */
+  static class ApiWriter {
+    private final List<ApiSink> mSinks = new ArrayList<ApiSink>();
+
+    ApiWriter add(ApiSink sink) {
+      mSinks.add(sink);
+      return this;
+    }
+
+    void write(Map<PackageInfo, List<ClassInfo>> classesByPackage) {
+      if (mSinks.isEmpty() || classesByPackage == null) {
+        return;
+      }
+      for (PackageInfo pkg : classesByPackage.keySet().stream().sorted(PackageInfo.comparator)
           .collect(Collectors.toList())) {
-        hasWrittenPackageHead = writeClassApi(apiWriter, clazz, filterEmit, filterReference,
-            hasWrittenPackageHead);
+        if (pkg.name().equals(PackageInfo.DEFAULT_PACKAGE)) continue;
+
+        for (ApiSink sink : mSinks) {
+          sink.startPackage(pkg);
+        }
+        for (ClassInfo cl : classesByPackage.get(pkg).stream().sorted(ClassInfo.comparator)
+            .collect(Collectors.toList())) {
+          SortedMembers members = new SortedMembers(cl);
+          for (ApiSink sink : mSinks) {
+            sink.writeClass(cl, members);
+          }
+        }
+        for (ApiSink sink : mSinks) {
+          sink.endPackage(pkg);
+        }
       }
+    }
+  }
+
+  /** The exhaustive members of a class, each kind sorted by its comparator. */
+  static class SortedMembers {
+    final List<MethodInfo> constructors;
+    final List<MethodInfo> methods;
+    final List<FieldInfo> enums;
+    final List<FieldInfo> fields;
 
-      if (hasWrittenPackageHead) {
-        apiWriter.print("}\n\n");
+    SortedMembers(ClassInfo cl) {
+      constructors = sorted(cl.getExhaustiveConstructors(), MethodInfo.comparator);
+      methods = sorted(cl.getExhaustiveMethods(), MethodInfo.comparator);
+      enums = sorted(cl.getExhaustiveEnumConstants(), FieldInfo.comparator);
+      fields = sorted(cl.getExhaustiveFields(), FieldInfo.comparator);
+    }
+
+    private static <T> List<T> sorted(List<T> members, Comparator<? super T> comparator) {
+      List<T> result = new ArrayList<T>(members);
+      Collections.sort(result, comparator);
+      return result;
+    }
+
+    /** Returns the members of {@code sorted} matching {@code filter}, still sorted. */
+    static <T extends MemberInfo> List<T> filter(List<T> sorted, Predicate<MemberInfo> filter) {
+      List<T> result = new ArrayList<T>();
+      for (T member : sorted) {
+        if (filter.test(member)) {
+          result.add(member);
+        }
       }
+      return result;
     }
   }
 
-  static void writeDexApi(PrintStream apiWriter, Map<PackageInfo, List<ClassInfo>> classesByPackage,
-      Predicate<MemberInfo> filterEmit) {
-    for (PackageInfo pkg : classesByPackage.keySet().stream().sorted(PackageInfo.comparator)
-        .collect(Collectors.toList())) {
-      if (pkg.name().equals(PackageInfo.DEFAULT_PACKAGE)) continue;
+  /** One output of an {@link ApiWriter}. */
+  abstract static class ApiSink {
+    void startPackage(PackageInfo pkg) {}
 
-      for (ClassInfo clazz : classesByPackage.get(pkg).stream().sorted(ClassInfo.comparator)
-          .collect(Collectors.toList())) {
-        writeClassDexApi(apiWriter, clazz, filterEmit);
+    abstract void writeClass(ClassInfo cl, SortedMembers members);
+
+    void endPackage(PackageInfo pkg) {}
+  }
+
+  /** Writes the signature text format of api.txt, removed.txt and private.txt. */
+  static class TextApiSink extends ApiSink {
+    private final PrintStream mWriter;
+    private final Predicate<MemberInfo> mFilterEmit;
+    private final Predicate<MemberInfo> mFilterReference;
+    private boolean mHasWrittenPackageHead;
+
+    TextApiSink(PrintStream writer, Predicate<MemberInfo> filterEmit,
+        Predicate<MemberInfo> filterReference) {
+      mWriter = writer;
+      mFilterEmit = filterEmit;
+      mFilterReference = filterReference;
+    }
+
+    @Override
+    void startPackage(PackageInfo pkg) {
+      mHasWrittenPackageHead = false;
+    }
+
+    @Override
+    void writeClass(ClassInfo cl, SortedMembers members) {
+      mHasWrittenPackageHead = writeClassApi(mWriter, cl, members, mFilterEmit, mFilterReference,
+          mHasWrittenPackageHead);
+    }
+
+    @Override
+    void endPackage(PackageInfo pkg) {
+      if (mHasWrittenPackageHead) {
+        mWriter.print("}\n\n");
       }
     }
   }
 
-  static void writeApiMapping(PrintStream mappingWriter,
-      Map<PackageInfo, List<ClassInfo>> classesByPackage) {
+  /** Writes one DEX signature per line, for the DEX API outputs. */
+  static class DexApiSink extends ApiSink {
+    private final PrintStream mWriter;
+    private final Predicate<MemberInfo> mFilterEmit;
 
-    for (PackageInfo pkg : classesByPackage.keySet().stream().sorted(PackageInfo.comparator)
-            .collect(Collectors.toList())) {
-      if (pkg.name().equals(PackageInfo.DEFAULT_PACKAGE)) continue;
-      for (ClassInfo cl : classesByPackage.get(pkg).stream().sorted(ClassInfo.comparator)
-              .collect(Collectors.toList())) {
-        cl.getExhaustiveConstructors().stream().sorted(MethodInfo.comparator).forEach(method -> {
-          writeMethodDexApi(mappingWriter, cl, method);
-          writeSourcePositionInfo(mappingWriter, method);
-        });
-        cl.getExhaustiveMethods().stream().sorted(MethodInfo.comparator).forEach(method -> {
-          writeMethodDexApi(mappingWriter, cl, method);
-          writeSourcePositionInfo(mappingWriter, method);
-        });
-        cl.getExhaustiveEnumConstants().stream().sorted(FieldInfo.comparator).forEach(enumInfo -> {
-          writeFieldDexApi(mappingWriter, cl, enumInfo);
-          writeSourcePositionInfo(mappingWriter, enumInfo);
-        });
-        cl.getExhaustiveFields().stream().sorted(FieldInfo.comparator).forEach(field -> {
-          writeFieldDexApi(mappingWriter, cl, field);
-          writeSourcePositionInfo(mappingWriter, field);
-        });
+    DexApiSink(PrintStream writer, Predicate<MemberInfo> filterEmit) {
+      mWriter = writer;
+      mFilterEmit = filterEmit;
+    }
+
+    @Override
+    void writeClass(ClassInfo cl, SortedMembers members) {
+      writeClassDexApi(mWriter, cl, members, mFilterEmit);
+    }
+  }
+
+  /** Writes the DEX signature and source position of every member. */
+  static class ApiMappingSink extends ApiSink {
+    private final PrintStream mWriter;
+
+    ApiMappingSink(PrintStream writer) {
+      mWriter = writer;
+    }
+
+    @Override
+    void writeClass(ClassInfo cl, SortedMembers members) {
+      for (MethodInfo method : members.constructors) {
+        writeMethodDexApi(mWriter, cl, method);
+        writeSourcePositionInfo(mWriter, method);
+      }
+      for (MethodInfo method : members.methods) {
+        writeMethodDexApi(mWriter, cl, method);
+        writeSourcePositionInfo(mWriter, method);
+      }
+      for (FieldInfo enumInfo : members.enums) {
+        writeFieldDexApi(mWriter, cl, enumInfo);
+        writeSourcePositionInfo(mWriter, enumInfo);
+      }
+      for (FieldInfo field : members.fields) {
+        writeFieldDexApi(mWriter, cl, field);
+        writeSourcePositionInfo(mWriter, field);
       }
     }
   }
 
+  /** Writes the proguard keep list. */
+  static class KeepListSink extends ApiSink {
+    private final PrintStream mWriter;
+    private final HashSet<ClassInfo> mNotStrippable;
+
+    KeepListSink(PrintStream writer, HashSet<ClassInfo> notStrippable) {
+      mWriter = writer;
+      mNotStrippable = notStrippable;
+    }
+
+    @Override
+    void writeClass(ClassInfo cl, SortedMembers members) {
+      writeClassKeepList(mWriter, cl, mNotStrippable);
+    }
+  }
+
   /**
    * Write the removed members of the class to removed.txt
    */
   private static boolean writeClassApi(PrintStream apiWriter, ClassInfo cl,
-      Predicate<MemberInfo> filterEmit, Predicate<MemberInfo> filterReference,
-      boolean hasWrittenPackageHead) {
-
-    List<MethodInfo> constructors = cl.getExhaustiveConstructors().stream().filter(filterEmit)
-        .sorted(MethodInfo.comparator).collect(Collectors.toList());
-    List<MethodInfo> methods = cl.getExhaustiveMethods().stream().filter(filterEmit)
-        .sorted(MethodInfo.comparator).collect(Collectors.toList());
-    List<FieldInfo> enums = cl.getExhaustiveEnumConstants().stream().filter(filterEmit)
-        .sorted(FieldInfo.comparator).collect(Collectors.toList());
+      SortedMembers members, Predicate<MemberInfo> filterEmit,
+      Predicate<MemberInfo> filterReference, boolean hasWrittenPackageHead) {
+
+    List<MethodInfo> constructors = SortedMembers.filter(members.constructors, filterEmit);
+    List<MethodInfo> methods = SortedMembers.filter(members.methods, filterEmit);
+    List<FieldInfo> enums = SortedMembers.filter(members.enums, filterEmit);
     List<FieldInfo> fields = cl.filteredFields(filterEmit).stream()
         .sorted(FieldInfo.comparator).collect(Collectors.toList());
 
@@ -1659,20 +2059,16 @@ public class Stubs {
   }
 
   private static void writeClassDexApi(PrintStream apiWriter, ClassInfo cl,
-      Predicate<MemberInfo> filterEmit) {
+      SortedMembers members, Predicate<MemberInfo> filterEmit) {
     if (filterEmit.test(cl.asMemberInfo())) {
       apiWriter.print(toSlashFormat(cl.qualifiedName()));
       apiWriter.print("\n");
     }
 
-    List<MethodInfo> constructors = cl.getExhaustiveConstructors().stream().filter(filterEmit)
-        .sorted(MethodInfo.comparator).collect(Collectors.toList());
-    List<MethodInfo> methods = cl.getExhaustiveMethods().stream().filter(filterEmit)
-        .sorted(MethodInfo.comparator).collect(Collectors.toList());
-    List<FieldInfo> enums = cl.getExhaustiveEnumConstants().stream().filter(filterEmit)
-        .sorted(FieldInfo.comparator).collect(Collectors.toList());
-    List<FieldInfo> fields = cl.getExhaustiveFields().stream().filter(filterEmit)
-        .sorted(FieldInfo.comparator).collect(Collectors.toList());
+    List<MethodInfo> constructors = SortedMembers.filter(members.constructors, filterEmit);
+    List<MethodInfo> methods = SortedMembers.filter(members.methods, filterEmit);
+    List<FieldInfo> enums = SortedMembers.filter(members.enums, filterEmit);
+    List<FieldInfo> fields = SortedMembers.filter(members.fields, filterEmit);
 
     for (MethodInfo mi : constructors) {
       writeMethodDexApi(apiWriter, cl, mi);
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.JSilver;
+import com.google.clearsilver.jsilver.autoescape.EscapeMode;
+import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.resourceloader.ClassResourceLoader;
+import com.google.clearsilver.jsilver.resourceloader.ResourceLoader;
+import com.google.clearsilver.jsilver.template.DelegatingTemplateLoader;
+import com.google.clearsilver.jsilver.template.Template;
+import com.google.clearsilver.jsilver.template.TemplateLoader;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide cache of parsed templates, shared by every {@link JSilver} instance that
+ * renders through {@link ClearPage#write}.
+ * <p>
+ * JSilver parses a template, and every template it includes, each time a page is rendered.
+ * This cache hands out the parsed {@link Template} instead, including for nested includes,
+ * and checks the resource's version (for files, its canonical path and modification time)
+ * on each lookup so edited templates are reparsed.
+ */
+public class TemplateCache {
+  private static final Map<Key, Entry> sTemplates = new ConcurrentHashMap<Key, Entry>();
+  private static final AtomicLong sHits = new AtomicLong();
+  private static final AtomicLong sMisses = new AtomicLong();
+
+  private static final CachingTemplateLoader sLoader = new CachingTemplateLoader();
+
+  /** Renders {@code templ} with the resource loader of {@code cs} into {@code out}. */
+  public static void render(JSilver cs, String templ, Data data, Appendable out)
+      throws IOException {
+    ResourceLoader resources = cs.getResourceLoader();
+    Template template = sLoader.load(templ, resources, cs.getEscapeMode(data));
+    cs.render(template, data, out, resources);
+  }
+
+  public static void printStats() {
+    System.out.println("Template cache: " + sHits.get() + " hits, " + sMisses.get()
+        + " misses");
+  }
+
+  /**
+   * Loads templates through a JSilver interpreter whose includes are routed back through
+   * this cache.
+   */
+  private static class CachingTemplateLoader implements TemplateLoader {
+    private final TemplateLoader mDelegate;
+
+    CachingTemplateLoader() {
+      // The instance only supplies the parser and interpreter; templates are always loaded
+      // from the resource loader of the JSilver that renders the page.
+      mDelegate = new JSilver(new ClassResourceLoader(TemplateCache.class)).getTemplateLoader();
+      if (mDelegate instanceof DelegatingTemplateLoader) {
+        ((DelegatingTemplateLoader) mDelegate).setTemplateLoaderDelegate(this);
+      }
+    }
+
+    @Override
+    public Template load(String name, ResourceLoader resources, EscapeMode mode) {
+      Object version = resources.getResourceVersionId(name);
+      Key key = new Key(name, resources, version, mode);
+      Entry entry = sTemplates.get(key);
+      if (entry != null && entry.version.equals(version)) {
+        sHits.incrementAndGet();
+        return entry.template;
+      }
+      sMisses.incrementAndGet();
+      Template template = mDelegate.load(name, resources, mode);
+      if (version != null) {
+        sTemplates.put(key, new Entry(version, template));
+      }
+      return template;
+    }
+
+    @Override
+    public Template createTemp(String name, String content, EscapeMode mode) {
+      return mDelegate.createTemp(name, content, mode);
+    }
+  }
+
+  /**
+   * Identifies a template by name and by where it was loaded from. File resources report a
+   * version that names the file they resolved to, so the same file is shared across resource
+   * loaders; other resources are only shared within the resource loader that found them.
+   */
+  private static class Key {
+    final String name;
+    final Object source;
+    final EscapeMode mode;
+
+    Key(String name, ResourceLoader resources, Object version, EscapeMode mode) {
+      this.name = name;
+      this.mode = mode;
+      String path = version instanceof String ? (String) version : null;
+      int at = path != null ? path.lastIndexOf('@') : -1;
+      if (at > 0 && !path.equals(name)) {
+        // "<canonical path>@<mtime>": drop the mtime so a newer version replaces the entry.
+        this.source = path.substring(0, at);
+      } else {
+        this.source = resources;
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return name.equals(other.name) && source.equals(other.source) && mode == other.mode;
+    }
+
+    @Override
+    public int hashCode() {
+      return (name.hashCode() * 31 + source.hashCode()) * 31 + Objects.hashCode(mode);
+    }
+  }
+
+  private static class Entry {
+    final Object version;
+    final Template template;
+
+    Entry(Object version, Template template) {
+      this.version = version;
+      this.template = template;
+    }
+  }
+}
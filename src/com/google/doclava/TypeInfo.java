@@ -28,9 +28,9 @@ public class TypeInfo implements Resolvable {
   public TypeInfo(boolean isPrimitive, String dimension, String simpleTypeName,
       String qualifiedTypeName, ClassInfo cl) {
     mIsPrimitive = isPrimitive;
-    mDimension = dimension;
-    mSimpleTypeName = simpleTypeName;
-    mQualifiedTypeName = qualifiedTypeName;
+    mDimension = Names.intern(dimension);
+    mSimpleTypeName = Names.intern(simpleTypeName);
+    mQualifiedTypeName = Names.intern(qualifiedTypeName);
     mClass = cl;
   }
 
@@ -109,12 +109,13 @@ public class TypeInfo implements Resolvable {
 
     int pos = typeString.indexOf('[');
     if (pos > -1) {
-      mDimension = typeString.substring(pos);
+      mDimension = Names.intern(typeString.substring(pos));
       typeString = typeString.substring(0, pos);
     } else {
       mDimension = "";
     }
 
+    typeString = Names.intern(typeString);
     if (PRIMITIVE_TYPES.contains(typeString)) {
       mIsPrimitive = true;
       mSimpleTypeName = typeString;
@@ -123,7 +124,7 @@ public class TypeInfo implements Resolvable {
       mQualifiedTypeName = typeString;
       pos = typeString.lastIndexOf('.');
       if (pos > -1) {
-        mSimpleTypeName = typeString.substring(pos + 1);
+        mSimpleTypeName = Names.intern(typeString.substring(pos + 1));
       } else {
         mSimpleTypeName = typeString;
       }
@@ -176,7 +177,8 @@ public class TypeInfo implements Resolvable {
   }
 
   public void setDimension(String dimension) {
-      mDimension = dimension;
+      mDimension = Names.intern(dimension);
+      mClosedFullName = null;
   }
 
   public String simpleTypeName() {
@@ -196,25 +198,54 @@ public class TypeInfo implements Resolvable {
   }
 
   public static String typeArgumentsName(ArrayList<TypeInfo> args, HashSet<String> typeVars) {
-    String result = "<";
+    StringBuilder result = new StringBuilder("<");
 
     int i = 0;
     for (TypeInfo arg : args) {
-      result += arg.fullName(typeVars);
+      result.append(arg.fullName(typeVars));
       if (i != (args.size()-1)) {
-        result += ", ";
+        result.append(", ");
       }
       i++;
     }
-    result += ">";
-    return result;
+    result.append(">");
+    return result.toString();
   }
 
   public String fullName(HashSet<String> typeVars) {
+    if (mClosedFullName != null) {
+      return mClosedFullName;
+    }
     mFullName = fullNameNoDimension(typeVars) + mDimension;
+    // Without type variables the name does not depend on typeVars, so it is worked out once.
+    if (!mentionsTypeVariable()) {
+      mFullName = mClosedFullName = Names.intern(mFullName);
+    }
     return mFullName;
   }
 
+  /**
+   * Returns whether this type is, or has among its type arguments and bounds, a type variable.
+   */
+  private boolean mentionsTypeVariable() {
+    if (mIsTypeVariable) {
+      return true;
+    }
+    return mentionsTypeVariable(mTypeArguments) || mentionsTypeVariable(mSuperBounds)
+        || mentionsTypeVariable(mExtendsBounds);
+  }
+
+  private static boolean mentionsTypeVariable(ArrayList<TypeInfo> types) {
+    if (types != null) {
+      for (TypeInfo type : types) {
+        if (type.mentionsTypeVariable()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   public String fullNameNoBounds(HashSet<String> typeVars) {
     return fullNameNoDimensionNoBounds(typeVars) + mDimension;
   }
@@ -360,6 +391,7 @@ public class TypeInfo implements Resolvable {
 
   void setTypeArguments(ArrayList<TypeInfo> args) {
     mTypeArguments = args;
+    mClosedFullName = null;
   }
 
   public void addTypeArgument(TypeInfo arg) {
@@ -368,11 +400,13 @@ public class TypeInfo implements Resolvable {
       }
 
       mTypeArguments.add(arg);
+      mClosedFullName = null;
   }
 
   public void setBounds(ArrayList<TypeInfo> superBounds, ArrayList<TypeInfo> extendsBounds) {
     mSuperBounds = superBounds;
     mExtendsBounds = extendsBounds;
+    mClosedFullName = null;
   }
 
   public ArrayList<TypeInfo> superBounds() {
@@ -385,10 +419,12 @@ public class TypeInfo implements Resolvable {
 
   public void setIsTypeVariable(boolean b) {
     mIsTypeVariable = b;
+    mClosedFullName = null;
   }
 
   void setIsWildcard(boolean b) {
     mIsWildcard = b;
+    mClosedFullName = null;
   }
 
   public boolean isWildcard() {
@@ -579,4 +615,6 @@ public class TypeInfo implements Resolvable {
   private ArrayList<TypeInfo> mSuperBounds;
   private ArrayList<TypeInfo> mExtendsBounds;
   private String mFullName;
+  /** {@link #mFullName} for a type with no type variables in it, which is always the same. */
+  private String mClosedFullName;
 }
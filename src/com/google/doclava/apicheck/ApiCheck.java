@@ -16,15 +16,22 @@
 
 package com.google.doclava.apicheck;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 
@@ -34,6 +41,12 @@ import com.google.doclava.Errors.ErrorMessage;
 import com.google.doclava.Stubs;
 
 public class ApiCheck {
+  /** How many parsed APIs a daemon keeps, most recently used first. */
+  private static final int API_CACHE_SIZE = 32;
+
+  /** APIs parsed by earlier requests to a daemon, by path; null outside of daemon mode. */
+  private Map<String, CachedApi> mApiCache;
+
   // parse out and consume the -whatever command line flags
   private static ArrayList<String[]> parseFlags(ArrayList<String> allArgs) {
     ArrayList<String[]> ret = new ArrayList<String[]>();
@@ -48,6 +61,8 @@ public class ApiCheck {
         arg[0] = flag;
         arg[1] = allArgs.get(++i);
         ret.add(arg);
+      } else if (flag.equals("-stream")) {
+        ret.add(new String[] { flag });
       } else {
         // we've consumed all of the -whatever args, so we're done
         break;
@@ -76,6 +91,8 @@ public class ApiCheck {
       // command syntax: -new_api oldapi.txt newapi.txt diff.xml
       // TODO: Support reading in other options for new_api, such as ignored classes/packages.
       System.exit(newApi(originalArgs[1], originalArgs[2], originalArgs[3], false));
+    } else if (originalArgs.length == 1 && "-daemon".equals(originalArgs[0])) {
+      System.exit(new ApiCheck().serve(System.in, System.out));
     } else {
       ApiCheck acheck = new ApiCheck();
       Report report = acheck.checkApi(originalArgs);
@@ -99,6 +116,7 @@ public class ApiCheck {
     // Avoid a hashCode call in a common loop by not passing in a HashSet in this case.
     Set<String> ignoredPackages = null;
     Set<String> ignoredClasses = null;
+    boolean stream = false;
 
     ArrayList<String[]> flags = ApiCheck.parseFlags(args);
     for (String[] a : flags) {
@@ -127,23 +145,32 @@ public class ApiCheck {
           ignoredPackages = new HashSet<String>();
         }
         ignoredPackages.add(a[1]);
+      } else if (a[0].equals("-stream")) {
+        stream = true;
       }
     }
 
-    ApiInfo oldApi;
-    ApiInfo newApi;
+    if (stream) {
+      return checkApiStreaming(args, ignoredPackages, ignoredClasses);
+    }
+
+    ApiInfo oldApi = null;
+    ApiInfo newApi = null;
     ApiInfo oldRemovedApi = null;
     ApiInfo newRemovedApi = null;
 
     // commandline options look like:
     // [other options] old_api.txt new_api.txt
     // [other options] old_api.txt new_api.txt old_removed_api.txt new_removed_api.txt
+    // Identical files have nothing to report, so they aren't even parsed.
     try {
-      oldApi = parseApi(args.get(0));
-      newApi = parseApi(args.get(1));
-      if (args.size() > 2) {
-        oldRemovedApi = parseApi(args.get(2));
-        newRemovedApi = parseApi(args.get(3));
+      if (!sameContents(args.get(0), args.get(1))) {
+        oldApi = loadApi(args.get(0));
+        newApi = loadApi(args.get(1));
+      }
+      if (args.size() > 2 && !sameContents(args.get(2), args.get(3))) {
+        oldRemovedApi = loadApi(args.get(2));
+        newRemovedApi = loadApi(args.get(3));
       }
     } catch (ApiParseException e) {
       e.printStackTrace();
@@ -152,7 +179,7 @@ public class ApiCheck {
     }
 
     // only run the consistency check if we haven't had XML parse errors
-    if (!Errors.hadError) {
+    if (oldApi != null && !Errors.hadError) {
       oldApi.isConsistent(newApi, null, ignoredPackages, ignoredClasses);
     }
 
@@ -163,24 +190,153 @@ public class ApiCheck {
     return new Report(Errors.hadError ? 1 : 0, Errors.getErrors());
   }
 
+  /**
+   * Serves {@link #checkApi} requests until {@code in} ends or has a blank line, so that a
+   * build can check many APIs while paying for JVM startup once and parsing each file once.
+   * <p>
+   * Each line of {@code in} is one request: the arguments {@link #main} would take for a
+   * check, separated by whitespace. The report is written to {@code out} as one line per
+   * error, in the format {@link #main} prints them, followed by {@code exit <code>}. Every
+   * request starts from a clean slate: no errors, and the default level for each error.
+   * Parsed APIs are reused while their file's modification time and length are unchanged.
+   */
+  public int serve(InputStream in, PrintStream out) {
+    mApiCache = new LinkedHashMap<String, CachedApi>(API_CACHE_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedApi> eldest) {
+        return size() > API_CACHE_SIZE;
+      }
+    };
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null && !line.trim().isEmpty()) {
+        Errors.clearErrors();
+        Errors.resetErrorLevels();
+        int code;
+        try {
+          Report report = checkApi(line.trim().split("\\s+"));
+          for (ErrorMessage m : report.errors()) {
+            out.println(m.toString());
+          }
+          code = report.code();
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+          code = 2;
+        }
+        out.println("exit " + code);
+        out.flush();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Parses {@code filename}, or in a daemon reuses the API parsed from it by an earlier
+   * request if the file hasn't changed since.
+   */
+  private ApiInfo loadApi(String filename) throws ApiParseException {
+    if (mApiCache == null) {
+      return parseApi(filename);
+    }
+    File file = new File(filename);
+    String key = file.getAbsolutePath();
+    long modified = file.lastModified();
+    long length = file.length();
+    CachedApi cached = mApiCache.get(key);
+    if (cached != null && cached.modified == modified && cached.length == length) {
+      return cached.api;
+    }
+    int errors = Errors.getErrors().size();
+    ApiInfo api = parseApi(filename);
+    // A file that reported errors while parsing is parsed again, so they are reported again.
+    if (Errors.getErrors().size() == errors) {
+      mApiCache.put(key, new CachedApi(modified, length, api));
+    }
+    return api;
+  }
+
+  private static class CachedApi {
+    final long modified;
+    final long length;
+    final ApiInfo api;
+
+    CachedApi(long modified, long length, ApiInfo api) {
+      this.modified = modified;
+      this.length = length;
+      this.api = api;
+    }
+  }
+
+  /**
+   * Like {@link #checkApi}, but reads the APIs a package at a time with
+   * {@link StreamingApiCheck} instead of holding all of them in memory.
+   */
+  private Report checkApiStreaming(ArrayList<String> args, Set<String> ignoredPackages,
+      Set<String> ignoredClasses) {
+    try {
+      StreamingApiCheck.isConsistent(args.get(0), args.get(1), ignoredPackages, ignoredClasses);
+      if (args.size() > 2 && !Errors.hadError) {
+        StreamingApiCheck.isConsistent(args.get(2), args.get(3), ignoredPackages,
+            ignoredClasses);
+      }
+    } catch (ApiParseException e) {
+      e.printStackTrace();
+      System.err.println("Error parsing API");
+      return new Report(1, Errors.getErrors());
+    }
+
+    return new Report(Errors.hadError ? 1 : 0, Errors.getErrors());
+  }
+
+  /**
+   * Whether two files have the same contents. Files that can't be read are reported as
+   * different, so that parsing them reports the problem.
+   */
+  static boolean sameContents(String a, String b) {
+    try {
+      if (new File(a).getCanonicalPath().equals(new File(b).getCanonicalPath())) {
+        return true;
+      }
+      if (new File(a).length() != new File(b).length()) {
+        return false;
+      }
+      return ApiFile.mapFile(a).equals(ApiFile.mapFile(b));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   public static ApiInfo parseApi(String filename) throws ApiParseException {
+    return parseApi(filename, null);
+  }
+
+  /**
+   * Like {@link #parseApi(String)}, also reporting what the parser that accepted the file read
+   * from it to {@code recorder} if it is not null.
+   */
+  static ApiInfo parseApi(String filename, ApiSnapshot.Recorder recorder)
+      throws ApiParseException {
     InputStream stream = null;
     Throwable textParsingError = null;
     Throwable xmlParsingError = null;
-    // try it as our format
+    // try it as our format, tokenizing the file in place
+    ByteBuffer buf;
     try {
-      stream = new FileInputStream(filename);
+      buf = ApiFile.mapFile(filename);
     } catch (IOException e) {
       throw new ApiParseException("Could not open file for parsing: " + filename, e);
     }
     try {
-      return ApiFile.parseApi(filename, stream);
+      if (recorder != null) {
+        recorder.start(ApiSnapshot.KIND_TEXT);
+      }
+      return ApiFile.parseApi(filename, buf, recorder);
     } catch (ApiParseException exception) {
       textParsingError = exception;
-    } finally {
-      try {
-        stream.close();
-      } catch (IOException ignored) {}
     }
     // try it as xml
     try {
@@ -189,7 +345,10 @@ public class ApiCheck {
       throw new ApiParseException("Could not open file for parsing: " + filename, e);
     }
     try {
-      return XmlApiFile.parseApi(stream);
+      if (recorder != null) {
+        recorder.start(ApiSnapshot.KIND_XML);
+      }
+      return XmlApiFile.parseApi(stream, recorder);
     } catch (ApiParseException exception) {
       xmlParsingError = exception;
     } finally {
@@ -21,6 +21,7 @@ import com.google.doclava.ClassInfo;
 import com.google.doclava.Converter;
 import com.google.doclava.FieldInfo;
 import com.google.doclava.MethodInfo;
+import com.google.doclava.Names;
 import com.google.doclava.PackageInfo;
 import com.google.doclava.ParameterInfo;
 import com.google.doclava.SourcePositionInfo;
@@ -28,6 +29,11 @@ import com.google.doclava.TypeInfo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -67,9 +73,54 @@ public class ApiFile {
       throw new ApiParseException("Error reading API file", ex);
     }
 
-    final Tokenizer tokenizer = new Tokenizer(filename, (new String(buf, 0, size)).toCharArray());
+    return parseApi(filename, ByteBuffer.wrap(buf, 0, size));
+  }
+
+  /**
+   * Maps {@code filename} into memory for {@link #parseApi(String, ByteBuffer)}, so that the
+   * file is tokenized in place instead of being copied onto the heap.
+   */
+  public static ByteBuffer mapFile(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Parses an API file held in {@code buf}, which is read from its position to its limit. The
+   * file is tokenized directly from its UTF-8 bytes.
+   */
+  public static ApiInfo parseApi(String filename, ByteBuffer buf) throws ApiParseException {
+    return parseApi(filename, buf, null);
+  }
+
+  /**
+   * Like {@link #parseApi(String, ByteBuffer)}, also reporting every token to {@code recorder}
+   * if it is not null.
+   */
+  static ApiInfo parseApi(String filename, ByteBuffer buf, ApiSnapshot.Recorder recorder)
+      throws ApiParseException {
+    final Tokenizer tokenizer = new Tokenizer(filename, buf);
+    tokenizer.mRecorder = recorder;
+    return parse(tokenizer);
+  }
+
+  static ApiInfo parse(Tokenizer tokenizer) throws ApiParseException {
     final ApiInfo api = new ApiInfo();
 
+    parsePackages(api, tokenizer);
+
+    api.resolveSuperclasses();
+    api.resolveInterfaces();
+
+    return api;
+  }
+
+  /**
+   * Adds every package in the tokenizer's input to {@code api}, without resolving superclasses
+   * or interfaces.
+   */
+  static void parsePackages(ApiInfo api, Tokenizer tokenizer) throws ApiParseException {
     while (true) {
       String token = tokenizer.getToken();
       if (token == null) {
@@ -81,11 +132,6 @@ public class ApiFile {
         throw new ApiParseException("expected package got " + token, tokenizer.getLine());
       }
     }
-
-    api.resolveSuperclasses();
-    api.resolveInterfaces();
-
-    return api;
   }
 
   private static void parsePackage(ApiInfo api, Tokenizer tokenizer)
@@ -98,6 +144,7 @@ public class ApiFile {
     assertIdent(tokenizer, token);
     name = token;
     pkg = new PackageInfo(name, tokenizer.pos());
+    long digest = digest(DIGEST_BASIS, name);
     token = tokenizer.requireToken();
     if (!"{".equals(token)) {
       throw new ApiParseException("expected '{' got " + token, tokenizer.getLine());
@@ -107,14 +154,17 @@ public class ApiFile {
       if ("}".equals(token)) {
         break;
       } else {
-        parseClass(api, pkg, tokenizer, token);
+        digest = (digest ^ parseClass(api, pkg, tokenizer, token).apiDigest()) * DIGEST_PRIME;
       }
     }
+    pkg.setApiDigest(digest != 0 ? digest : 1);
     api.addPackage(pkg);
   }
 
-  private static void parseClass(ApiInfo api, PackageInfo pkg, Tokenizer tokenizer, String token)
-      throws ApiParseException {
+  private static ClassInfo parseClass(ApiInfo api, PackageInfo pkg, Tokenizer tokenizer,
+      String token) throws ApiParseException {
+    // the class's digest covers every token from here to its closing brace
+    tokenizer.mDigest = digest(DIGEST_BASIS, token);
     boolean pub = false;
     boolean prot = false;
     boolean priv = false;
@@ -226,7 +276,9 @@ public class ApiFile {
       }
       token = tokenizer.requireToken();
     }
+    cl.setApiDigest(tokenizer.mDigest != 0 ? tokenizer.mDigest : 1);
     pkg.addClass(cl);
+    return cl;
   }
   
   private static void parseConstructor(Tokenizer tokenizer, ClassInfo cl, String token)
@@ -608,6 +660,17 @@ public class ApiFile {
     return pkg + "." + parentQName + className;
   }
 
+  // 64-bit FNV-1a, over each token's characters followed by a separator.
+  private static final long DIGEST_BASIS = 0xcbf29ce484222325L;
+  private static final long DIGEST_PRIME = 0x100000001b3L;
+
+  static long digest(long digest, String token) {
+    for (int i = 0; i < token.length(); i++) {
+      digest = (digest ^ token.charAt(i)) * DIGEST_PRIME;
+    }
+    return (digest ^ 0xffff) * DIGEST_PRIME;
+  }
+
   public static boolean isIdent(String token) {
     return isident(token.charAt(0));
   }
@@ -619,13 +682,27 @@ public class ApiFile {
   }
   
   static class Tokenizer {
-    char[] mBuf;
+    ByteBuffer mBuf;
+    int mLength;
     String mFilename;
     int mPos;
     int mLine = 1;
-    Tokenizer(String filename, char[] buf) {
+    /** A digest of the tokens read with {@link #requireToken} since it was last set. */
+    long mDigest;
+    ApiSnapshot.Recorder mRecorder;
+    private final SymbolTable mSymbols;
+
+    Tokenizer(String filename, ByteBuffer buf) {
+      this(filename, buf, new SymbolTable());
+    }
+
+    /** Creates a tokenizer that shares {@code symbols} with others reading the same file. */
+    Tokenizer(String filename, ByteBuffer buf, SymbolTable symbols) {
       mFilename = filename;
       mBuf = buf;
+      mPos = buf.position();
+      mLength = buf.limit();
+      mSymbols = symbols;
     }
 
     public SourcePositionInfo pos() {
@@ -636,10 +713,16 @@ public class ApiFile {
       return mLine;
     }
 
+    // Bytes of multi-byte UTF-8 sequences are all >= 0x80, so they can never be mistaken for
+    // the ASCII whitespace and separators the grammar is made of.
+    char charAt(int pos) {
+      return (char) (mBuf.get(pos) & 0xff);
+    }
+
     boolean eatWhitespace() {
       boolean ate = false;
-      while (mPos < mBuf.length && isspace(mBuf[mPos])) {
-        if (mBuf[mPos] == '\n') {
+      while (mPos < mLength && isspace(charAt(mPos))) {
+        if (charAt(mPos) == '\n') {
           mLine++;
         }
         mPos++;
@@ -649,10 +732,10 @@ public class ApiFile {
     }
 
     boolean eatComment() {
-      if (mPos+1 < mBuf.length) {
-        if (mBuf[mPos] == '/' && mBuf[mPos+1] == '/') {
+      if (mPos+1 < mLength) {
+        if (charAt(mPos) == '/' && charAt(mPos+1) == '/') {
           mPos += 2;
-          while (mPos < mBuf.length && !isnewline(mBuf[mPos])) {
+          while (mPos < mLength && !isnewline(charAt(mPos))) {
             mPos++;
           }
           return true;
@@ -673,6 +756,7 @@ public class ApiFile {
     public String requireToken(boolean parenIsSep) throws ApiParseException {
       final String token = getToken(parenIsSep);
       if (token != null) {
+        mDigest = digest(mDigest, token);
         return token;
       } else {
         throw new ApiParseException("Unexpected end of file", mLine);
@@ -684,12 +768,20 @@ public class ApiFile {
     }
 
     public String getToken(boolean parenIsSep) throws ApiParseException {
+      String token = readToken(parenIsSep);
+      if (mRecorder != null) {
+        mRecorder.token(token, mLine);
+      }
+      return token;
+    }
+
+    private String readToken(boolean parenIsSep) throws ApiParseException {
       eatWhitespaceAndComments();
-      if (mPos >= mBuf.length) {
+      if (mPos >= mLength) {
         return null;
       }
       final int line = mLine;
-      final char c = mBuf[mPos];
+      final char c = charAt(mPos);
       final int start = mPos;
       mPos++;
       if (c == '"') {
@@ -697,10 +789,10 @@ public class ApiFile {
         final int STATE_ESCAPE = 1;
         int state = STATE_BEGIN;
         while (true) {
-          if (mPos >= mBuf.length) {
+          if (mPos >= mLength) {
             throw new ApiParseException("Unexpected end of file for \" starting at " + line, mLine);
           }
-          final char k = mBuf[mPos];
+          final char k = charAt(mPos);
           if (k == '\n' || k == '\r') {
             throw new ApiParseException("Unexpected newline for \" starting at " + line, mLine);
           }
@@ -713,7 +805,7 @@ public class ApiFile {
                   mPos++;
                   break;
                 case '"':
-                  return new String(mBuf, start, mPos-start);
+                  return decode(start, mPos);
               }
             case STATE_ESCAPE:
               state = STATE_BEGIN;
@@ -721,30 +813,134 @@ public class ApiFile {
           }
         }
       } else if (issep(c, parenIsSep)) {
-        return "" + c;
+        return separator(c);
       } else {
         int genericDepth = 0;
         do {
-          while (mPos < mBuf.length && !isspace(mBuf[mPos]) && !issep(mBuf[mPos], parenIsSep)) {
+          while (mPos < mLength && !isspace(charAt(mPos)) && !issep(charAt(mPos), parenIsSep)) {
             mPos++;
           }
-          if (mPos < mBuf.length) {
-            if (mBuf[mPos] == '<') {
+          if (mPos < mLength) {
+            if (charAt(mPos) == '<') {
               genericDepth++;
               mPos++;
             } else if (genericDepth != 0) {
-              if (mBuf[mPos] == '>') {
+              if (charAt(mPos) == '>') {
                 genericDepth--;
               }
               mPos++;
             }
           }
-        } while (mPos < mBuf.length
-            && ((!isspace(mBuf[mPos]) && !issep(mBuf[mPos], parenIsSep)) || genericDepth != 0));
-        if (mPos >= mBuf.length) {
+        } while (mPos < mLength
+            && ((!isspace(charAt(mPos)) && !issep(charAt(mPos), parenIsSep)) || genericDepth != 0));
+        if (mPos >= mLength) {
           throw new ApiParseException("Unexpected end of file for \" starting at " + line, mLine);
         }
-        return new String(mBuf, start, mPos-start);
+        String symbol = mSymbols.intern(mBuf, start, mPos);
+        return symbol != null ? symbol : decode(start, mPos);
+      }
+    }
+
+    private String decode(int start, int end) {
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = mBuf.get(start + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static final String[] SEPARATORS = new String[128];
+  static {
+    for (char c : "(){},;<>".toCharArray()) {
+      SEPARATORS[c] = String.valueOf(c);
+    }
+  }
+
+  private static String separator(char c) {
+    return SEPARATORS[c];
+  }
+
+  /**
+   * Identifiers, types and keywords seen by a tokenizer. API files repeat the same names over
+   * and over, so each distinct token is stored once and handed out without allocating.
+   * <p>
+   * A table belongs to one parse, so tokenizers running on different threads never share one
+   * and it is freed with the parse. Strings that outlive it are shared through {@link Names}.
+   */
+  static class SymbolTable {
+    private String[] mSymbols = new String[1 << 10];
+    private int[] mHashes = new int[1 << 10];
+    private int mCount = 0;
+    private byte[] mScratch = new byte[256];
+
+    /**
+     * Returns the shared String for the ASCII token in {@code buf} between {@code start} and
+     * {@code end}, or null if the token is not plain ASCII.
+     */
+    String intern(ByteBuffer buf, int start, int end) {
+      // For ASCII this is exactly String.hashCode().
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        byte b = buf.get(i);
+        if (b < 0) {
+          return null;
+        }
+        hash = 31 * hash + b;
+      }
+      final int mask = mSymbols.length - 1;
+      int index = hash & mask;
+      String symbol;
+      while ((symbol = mSymbols[index]) != null) {
+        if (mHashes[index] == hash && matches(symbol, buf, start, end)) {
+          return symbol;
+        }
+        index = (index + 1) & mask;
+      }
+
+      final int length = end - start;
+      if (mScratch.length < length) {
+        mScratch = new byte[Math.max(length, mScratch.length * 2)];
+      }
+      for (int i = 0; i < length; i++) {
+        mScratch[i] = buf.get(start + i);
+      }
+      symbol = Names.intern(new String(mScratch, 0, length, StandardCharsets.ISO_8859_1));
+      mSymbols[index] = symbol;
+      mHashes[index] = hash;
+      if (++mCount * 2 > mSymbols.length) {
+        grow();
+      }
+      return symbol;
+    }
+
+    private static boolean matches(String symbol, ByteBuffer buf, int start, int end) {
+      if (symbol.length() != end - start) {
+        return false;
+      }
+      for (int i = start; i < end; i++) {
+        if (symbol.charAt(i - start) != buf.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void grow() {
+      String[] symbols = mSymbols;
+      int[] hashes = mHashes;
+      mSymbols = new String[symbols.length * 2];
+      mHashes = new int[hashes.length * 2];
+      final int mask = mSymbols.length - 1;
+      for (int i = 0; i < symbols.length; i++) {
+        if (symbols[i] != null) {
+          int index = hashes[i] & mask;
+          while (mSymbols[index] != null) {
+            index = (index + 1) & mask;
+          }
+          mSymbols[index] = symbols[i];
+          mHashes[index] = hashes[i];
+        }
       }
     }
   }
@@ -18,6 +18,7 @@ package com.google.doclava.apicheck;
 
 import com.google.doclava.ClassInfo;
 import com.google.doclava.Errors;
+import com.google.doclava.Errors.ErrorMessage;
 import com.google.doclava.PackageInfo;
 
 import java.util.ArrayList;
@@ -26,6 +27,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class ApiInfo {
 
@@ -50,7 +52,7 @@ public class ApiInfo {
         continue;
       }
       for (String iface : ifaces) {
-        ClassInfo ci = mAllClasses.get(iface);
+        ClassInfo ci = findClass(iface);
         if (ci == null) {
           // Interface not provided by this codebase. Inject a stub.
           ci = new ClassInfo(iface);
@@ -84,26 +86,42 @@ public class ApiInfo {
       Collection<String> ignoredPackages, Collection<String> ignoredClasses) {
     boolean consistent = true;
     boolean diffMode = pkgInfoDiff != null;
-    for (PackageInfo pInfo : mPackages.values()) {
-      List<ClassInfo> newClsApis = null;
 
-      // TODO: Add support for matching subpackages (e.g, something like
-      // test.example.* should match test.example.subpackage, and
-      // test.example.** should match the above AND test.example.subpackage.more)
+    // TODO: Add support for matching subpackages (e.g, something like
+    // test.example.* should match test.example.subpackage, and
+    // test.example.** should match the above AND test.example.subpackage.more)
+    List<PackageInfo> packages = new ArrayList<PackageInfo>();
+    for (PackageInfo pInfo : mPackages.values()) {
       if (ignoredPackages != null && ignoredPackages.contains(pInfo.name())) {
-          // TODO: Log skipping this?
-          continue;
+        continue;
       }
-      if (otherApi.getPackages().containsKey(pInfo.name())) {
-        if (diffMode) {
-          newClsApis = new ArrayList<>();
-        }
-        if (!pInfo.isConsistent(otherApi.getPackages().get(pInfo.name()), newClsApis, ignoredClasses)) {
+      PackageInfo otherInfo = otherApi.getPackages().get(pInfo.name());
+      if (otherInfo != null && pInfo.apiDigest() != 0
+          && pInfo.apiDigest() == otherInfo.apiDigest()) {
+        // declared identically, so there is nothing to report or add to the diff
+        continue;
+      }
+      packages.add(pInfo);
+    }
+
+    // Packages are checked in parallel, each holding back its errors, and the results are
+    // then taken in the order the packages would have been checked one at a time.
+    otherApi.prepareForParallelCheck();
+    List<PackageCheck> checks = packages.parallelStream()
+        .map(pInfo -> new PackageCheck(pInfo, otherApi.getPackages().get(pInfo.name()), diffMode,
+            ignoredClasses))
+        .collect(Collectors.toList());
+
+    for (PackageCheck check : checks) {
+      PackageInfo pInfo = check.pInfo;
+      Errors.report(check.errors);
+      if (check.otherInfo != null) {
+        if (!check.consistent) {
           consistent = false;
         }
-        if (diffMode && !newClsApis.isEmpty()) {
+        if (diffMode && !check.newClsApis.isEmpty()) {
           PackageInfo info = new PackageInfo(pInfo.name(), pInfo.position());
-          for (ClassInfo cInfo : newClsApis) {
+          for (ClassInfo cInfo : check.newClsApis) {
             if (ignoredClasses == null || !ignoredClasses.contains(cInfo.qualifiedName())) {
               info.addClass(cInfo);
             }
@@ -134,6 +152,40 @@ public class ApiInfo {
     return consistent;
   }
 
+  /**
+   * Fills in what the consistency checks compute lazily on the classes they look up across
+   * packages, so that packages can be checked on several threads.
+   */
+  private void prepareForParallelCheck() {
+    for (ClassInfo cl : mAllClasses.values()) {
+      for (ClassInfo c : cl.hierarchy()) {
+        c.interfaces();
+      }
+    }
+  }
+
+  /** The result of checking one package against its newer version, if it has one. */
+  private static class PackageCheck {
+    final PackageInfo pInfo;
+    final PackageInfo otherInfo;
+    final List<ErrorMessage> errors = new ArrayList<ErrorMessage>();
+    List<ClassInfo> newClsApis;
+    boolean consistent;
+
+    PackageCheck(PackageInfo pInfo, PackageInfo otherInfo, boolean diffMode,
+        Collection<String> ignoredClasses) {
+      this.pInfo = pInfo;
+      this.otherInfo = otherInfo;
+      if (otherInfo != null) {
+        if (diffMode) {
+          newClsApis = new ArrayList<>();
+        }
+        consistent = Errors.collect(errors,
+            () -> pInfo.isConsistent(otherInfo, newClsApis, ignoredClasses));
+      }
+    }
+  }
+
   public HashMap<String, PackageInfo> getPackages() {
     return mPackages;
   }
@@ -168,7 +220,7 @@ public class ApiInfo {
         if (scName == null) {
           scName = "java.lang.Object";
         }
-        ClassInfo superclass = mAllClasses.get(scName);
+        ClassInfo superclass = findClass(scName);
         if (superclass == null) {
           // Superclass not provided by this codebase. Inject a stub.
           superclass = new ClassInfo(scName);
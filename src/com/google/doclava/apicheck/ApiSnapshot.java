@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.apicheck;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary cache of a parsed API file, stored next to it as {@code <file>.snapshot}.
+ * <p>
+ * A snapshot holds what the parser read from the file, not the model it built: the tokens of a
+ * text file, or the elements of an XML file. Every distinct string is stored once in a table and
+ * the tokens and elements refer to it by index. Loading a snapshot replays that input through
+ * the same parser, which skips the tokenizing or XML parsing and builds exactly the
+ * {@link ApiInfo} that parsing the file would.
+ * <p>
+ * A snapshot records the SHA-1 of the file it was made from and is only used while the file
+ * still has that content.
+ * <pre>
+ *   int     MAGIC
+ *   int     VERSION
+ *   byte[20] SHA-1 of the source file
+ *   byte    KIND_TEXT or KIND_XML
+ *   int     string count, then for each string its UTF-8 length and bytes
+ *   int     event count, then the events
+ * </pre>
+ * Text events are (string index, line) pairs, with index -1 for the end of the file. XML events
+ * are {@code EVENT_START} followed by the element's name, its attribute count and its attribute
+ * name and value pairs, or {@code EVENT_END} followed by the element's name.
+ */
+public class ApiSnapshot {
+  public static final String SUFFIX = ".snapshot";
+
+  static final byte KIND_TEXT = 1;
+  static final byte KIND_XML = 2;
+
+  private static final int MAGIC = 0x44415049; // "DAPI"
+  private static final int VERSION = 1;
+  private static final int EVENT_START = 0;
+  private static final int EVENT_END = 1;
+
+  /**
+   * Parses {@code filename} as {@link ApiCheck#parseApi(String)} does, using its snapshot if
+   * it is up to date and writing a new one otherwise.
+   */
+  public static ApiInfo parseApi(String filename) throws ApiParseException {
+    byte[] hash;
+    try {
+      hash = sha1(ApiFile.mapFile(filename));
+    } catch (IOException e) {
+      throw new ApiParseException("Could not open file for parsing: " + filename, e);
+    }
+
+    File snapshot = new File(filename + SUFFIX);
+    if (snapshot.isFile()) {
+      try {
+        ApiInfo api = load(filename, ApiFile.mapFile(snapshot.getPath()), hash);
+        if (api != null) {
+          return api;
+        }
+      } catch (IOException | ApiParseException | RuntimeException e) {
+        // Unreadable, truncated or corrupt. The hash matched, so the file itself parsed when
+        // the snapshot was made; drop the snapshot, then parse the file and write a new one.
+        snapshot.delete();
+      }
+    }
+
+    Recorder recorder = new Recorder();
+    ApiInfo api = ApiCheck.parseApi(filename, recorder);
+    recorder.save(snapshot, hash);
+    return api;
+  }
+
+  /**
+   * Rebuilds the API held in {@code buf}, or returns null if it is not a snapshot of a file
+   * with the given hash.
+   */
+  private static ApiInfo load(String filename, ByteBuffer buf, byte[] hash)
+      throws ApiParseException {
+    if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+      return null;
+    }
+    byte[] sourceHash = new byte[hash.length];
+    buf.get(sourceHash);
+    if (!Arrays.equals(hash, sourceHash)) {
+      return null;
+    }
+    byte kind = buf.get();
+
+    // every string takes at least its length, so larger counts and lengths are corrupt
+    int stringCount = buf.getInt();
+    if (stringCount < 0 || stringCount > buf.remaining() / 4) {
+      return null;
+    }
+    String[] strings = new String[stringCount];
+    byte[] bytes = new byte[256];
+    for (int i = 0; i < strings.length; i++) {
+      int length = buf.getInt();
+      if (length < 0 || length > buf.remaining()) {
+        return null;
+      }
+      if (bytes.length < length) {
+        bytes = new byte[Math.max(length, bytes.length * 2)];
+      }
+      buf.get(bytes, 0, length);
+      strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    int count = buf.getInt();
+    IntBuffer events = buf.slice().asIntBuffer();
+    if (count < 0 || events.remaining() < count) {
+      return null;
+    }
+    events.limit(count);
+
+    if (kind == KIND_TEXT) {
+      return ApiFile.parse(new ReplayTokenizer(filename, strings, events));
+    } else if (kind == KIND_XML) {
+      return replayXml(strings, events);
+    }
+    return null;
+  }
+
+  private static ApiInfo replayXml(String[] strings, IntBuffer events) {
+    XmlApiFile handler = new XmlApiFile();
+    AttributesImpl attributes = new AttributesImpl();
+    while (events.hasRemaining()) {
+      int event = events.get();
+      String name = strings[events.get()];
+      if (event == EVENT_START) {
+        attributes.clear();
+        int count = events.get();
+        for (int i = 0; i < count; i++) {
+          String attr = strings[events.get()];
+          attributes.addAttribute("", attr, attr, "CDATA", strings[events.get()]);
+        }
+        handler.startElement("", name, name, attributes);
+      } else {
+        handler.endElement("", name, name);
+      }
+    }
+    return handler.finish();
+  }
+
+  /** Hands the recorded tokens back to {@link ApiFile}'s parser. */
+  private static class ReplayTokenizer extends ApiFile.Tokenizer {
+    private final String[] mStrings;
+    private final IntBuffer mEvents;
+
+    ReplayTokenizer(String filename, String[] strings, IntBuffer events) {
+      super(filename, ByteBuffer.allocate(0), null);
+      mStrings = strings;
+      mEvents = events;
+    }
+
+    @Override
+    public String getToken(boolean parenIsSep) throws ApiParseException {
+      if (!mEvents.hasRemaining()) {
+        return null;
+      }
+      int index = mEvents.get();
+      mLine = mEvents.get();
+      return index < 0 ? null : mStrings[index];
+    }
+  }
+
+  /** Collects what a parser reads from an API file so that it can be saved as a snapshot. */
+  static class Recorder {
+    private byte mKind;
+    private final Map<String, Integer> mIndex = new HashMap<String, Integer>();
+    private final List<String> mStrings = new ArrayList<String>();
+    private int[] mEvents = new int[1024];
+    private int mCount;
+
+    /** Discards anything recorded so far and starts recording input for the given parser. */
+    void start(byte kind) {
+      mKind = kind;
+      mIndex.clear();
+      mStrings.clear();
+      mCount = 0;
+    }
+
+    void token(String token, int line) {
+      add(token == null ? -1 : string(token));
+      add(line);
+    }
+
+    void startElement(String name, Attributes attributes) {
+      add(EVENT_START);
+      add(string(name));
+      add(attributes.getLength());
+      for (int i = 0; i < attributes.getLength(); i++) {
+        add(string(attributes.getQName(i)));
+        add(string(attributes.getValue(i)));
+      }
+    }
+
+    void endElement(String name) {
+      add(EVENT_END);
+      add(string(name));
+    }
+
+    private int string(String s) {
+      Integer index = mIndex.get(s);
+      if (index == null) {
+        index = mStrings.size();
+        mIndex.put(s, index);
+        mStrings.add(s);
+      }
+      return index;
+    }
+
+    private void add(int value) {
+      if (mCount == mEvents.length) {
+        mEvents = Arrays.copyOf(mEvents, mEvents.length * 2);
+      }
+      mEvents[mCount++] = value;
+    }
+
+    /**
+     * Writes the snapshot to {@code file}. Snapshots are only a cache, so a directory that
+     * cannot be written to is not an error.
+     */
+    void save(File file, byte[] hash) {
+      File tmp = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+      try {
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.write(hash);
+          out.writeByte(mKind);
+          out.writeInt(mStrings.size());
+          for (String s : mStrings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+          }
+          out.writeInt(mCount);
+          for (int i = 0; i < mCount; i++) {
+            out.writeInt(mEvents[i]);
+          }
+        } finally {
+          out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        tmp.delete();
+      }
+    }
+  }
+
+  private static byte[] sha1(ByteBuffer buf) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(buf);
+      return digest.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.apicheck;
+
+import com.google.doclava.ClassInfo;
+import com.google.doclava.Errors;
+import com.google.doclava.PackageInfo;
+import com.google.doclava.SourcePositionInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Checks two API files for consistency as {@link ApiInfo#isConsistent} does, one package at a
+ * time instead of parsing both files up front.
+ * <p>
+ * A first pass over each file only notes where each package is and which package each class
+ * is in. Packages are then compared in sorted order, each parsed from its own part of the
+ * file, and the packages holding their superclasses and interfaces are parsed as they are
+ * needed. Each file only keeps the last few packages it parsed, so memory is bounded by the
+ * packages being compared and their ancestry rather than by the whole API. Every package is
+ * still parsed once up front, so a file is rejected exactly when a full parse rejects it.
+ * <p>
+ * Only the text format can be read this way; XML files are parsed in full.
+ */
+public class StreamingApiCheck {
+  /** How many parsed packages each file keeps around for resolving supertypes. */
+  private static final int LOADED_PACKAGES = 16;
+
+  /**
+   * Checks {@code newFile} against {@code oldFile}, reporting the same errors as
+   * {@link ApiInfo#isConsistent(ApiInfo, java.util.List, Collection, Collection)}.
+   */
+  public static boolean isConsistent(String oldFile, String newFile,
+      Collection<String> ignoredPackages, Collection<String> ignoredClasses)
+      throws ApiParseException {
+    if (ApiCheck.sameContents(oldFile, newFile)) {
+      return true;
+    }
+    ApiIndex oldApi = ApiIndex.open(oldFile);
+    ApiIndex newApi = oldApi != null ? ApiIndex.open(newFile) : null;
+    if (oldApi == null || newApi == null) {
+      ApiInfo oldInfo = ApiCheck.parseApi(oldFile);
+      ApiInfo newInfo = ApiCheck.parseApi(newFile);
+      // as in ApiCheck, only check APIs that parsed cleanly
+      return !Errors.hadError
+          && oldInfo.isConsistent(newInfo, null, ignoredPackages, ignoredClasses);
+    }
+
+    boolean consistent = true;
+    TreeSet<String> names = new TreeSet<String>(oldApi.mSections.keySet());
+    names.addAll(newApi.mSections.keySet());
+    try {
+      for (String name : names) {
+        if (ignoredPackages != null && ignoredPackages.contains(name)) {
+          continue;
+        }
+        if (!newApi.mSections.containsKey(name)) {
+          Errors.error(Errors.REMOVED_PACKAGE, oldApi.position(name), "Removed package " + name);
+          consistent = false;
+        } else if (!oldApi.mSections.containsKey(name)) {
+          Errors.error(Errors.ADDED_PACKAGE, newApi.position(name), "Added package " + name);
+          consistent = false;
+        } else if (oldApi.section(name).equals(newApi.section(name))) {
+          // declared identically, so there is nothing to report
+        } else if (!oldApi.load(name).isConsistent(newApi.load(name), null, ignoredClasses)) {
+          consistent = false;
+        }
+      }
+    } catch (LoadException e) {
+      throw (ApiParseException) e.getCause();
+    }
+    return consistent;
+  }
+
+  /** Where a package is in its file. */
+  private static class Section {
+    final int start;
+    final int end;
+    /** The line {@link #start} is on. */
+    final int startLine;
+    /** The line the package is declared on, which is its position. */
+    final int line;
+
+    Section(int start, int end, int startLine, int line) {
+      this.start = start;
+      this.end = end;
+      this.startLine = startLine;
+      this.line = line;
+    }
+  }
+
+  /** A text API file, parsed a package at a time. */
+  private static class ApiIndex {
+    private final String mFilename;
+    private final ByteBuffer mBuf;
+    private final ApiFile.SymbolTable mSymbols = new ApiFile.SymbolTable();
+    final Map<String, Section> mSections = new HashMap<String, Section>();
+    private final Map<String, String> mClassPackages = new HashMap<String, String>();
+    private final Map<String, PackageApi> mLoaded =
+        new LinkedHashMap<String, PackageApi>(LOADED_PACKAGES, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, PackageApi> eldest) {
+            return size() > LOADED_PACKAGES;
+          }
+        };
+
+    private ApiIndex(String filename, ByteBuffer buf) {
+      mFilename = filename;
+      mBuf = buf;
+    }
+
+    /**
+     * Indexes {@code filename}, or returns null if it is not a text API file or does not parse,
+     * so that parsing it in full reports the problem.
+     */
+    static ApiIndex open(String filename) throws ApiParseException {
+      ByteBuffer buf;
+      try {
+        buf = ApiFile.mapFile(filename);
+      } catch (IOException e) {
+        throw new ApiParseException("Could not open file for parsing: " + filename, e);
+      }
+      ApiIndex index = new ApiIndex(filename, buf);
+      try {
+        index.scan();
+        index.verify();
+      } catch (ApiParseException e) {
+        return null;
+      }
+      return index;
+    }
+
+    /**
+     * Parses every package and throws the result away. Packages that are identical, added or
+     * removed are never loaded, but a file that a full parse rejects must still be rejected.
+     */
+    private void verify() throws ApiParseException {
+      for (String name : mSections.keySet()) {
+        ApiFile.Tokenizer tokenizer = new ApiFile.Tokenizer(mFilename, section(name), mSymbols);
+        tokenizer.mLine = mSections.get(name).startLine;
+        ApiFile.parsePackages(new ApiInfo(), tokenizer);
+      }
+    }
+
+    /** Finds each package and the classes declared in it, without parsing their members. */
+    private void scan() throws ApiParseException {
+      ApiFile.Tokenizer tokenizer = new ApiFile.Tokenizer(mFilename, mBuf.duplicate(), mSymbols);
+      while (true) {
+        int start = tokenizer.mPos;
+        int startLine = tokenizer.mLine;
+        String token = tokenizer.getToken();
+        if (token == null) {
+          break;
+        }
+        if (!"package".equals(token)) {
+          throw new ApiParseException("expected package got " + token, tokenizer.getLine());
+        }
+        String name = tokenizer.requireToken();
+        int line = tokenizer.getLine();
+        token = tokenizer.requireToken();
+        if (!"{".equals(token)) {
+          throw new ApiParseException("expected '{' got " + token, tokenizer.getLine());
+        }
+        int depth = 1;
+        while (depth > 0) {
+          token = tokenizer.requireToken();
+          if ("{".equals(token)) {
+            depth++;
+          } else if ("}".equals(token)) {
+            depth--;
+          } else if (depth == 1 && ("class".equals(token) || "interface".equals(token))) {
+            String cl = tokenizer.requireToken();
+            int generics = cl.indexOf('<');
+            if (generics != -1) {
+              cl = cl.substring(0, generics);
+            }
+            mClassPackages.put(name + "." + cl, name);
+          }
+        }
+        mSections.put(name, new Section(start, tokenizer.mPos, startLine, line));
+      }
+    }
+
+    /** Returns the bytes of package {@code name}'s declaration. */
+    ByteBuffer section(String name) {
+      Section section = mSections.get(name);
+      ByteBuffer buf = mBuf.duplicate();
+      buf.limit(section.end);
+      buf.position(section.start);
+      return buf;
+    }
+
+    SourcePositionInfo position(String name) {
+      return new SourcePositionInfo(mFilename, mSections.get(name).line, 0);
+    }
+
+    PackageInfo load(String name) {
+      return api(name).getPackages().get(name);
+    }
+
+    /** Returns the class named {@code qualifiedName} in this file, or null if it has none. */
+    ClassInfo findClass(String qualifiedName) {
+      String pkg = mClassPackages.get(qualifiedName);
+      return pkg != null ? api(pkg).findOwnClass(qualifiedName) : null;
+    }
+
+    private PackageApi api(String name) {
+      PackageApi api = mLoaded.get(name);
+      if (api == null) {
+        ApiFile.Tokenizer tokenizer = new ApiFile.Tokenizer(mFilename, section(name), mSymbols);
+        tokenizer.mLine = mSections.get(name).startLine;
+        api = new PackageApi(this);
+        try {
+          ApiFile.parsePackages(api, tokenizer);
+        } catch (ApiParseException e) {
+          throw new LoadException(e);
+        }
+        // Added before resolving, so packages whose classes extend each other's find it.
+        mLoaded.put(name, api);
+        api.resolveSuperclasses();
+        api.resolveInterfaces();
+      }
+      return api;
+    }
+  }
+
+  /** One package of an {@link ApiIndex}, which looks up other classes in the rest of the file. */
+  private static class PackageApi extends ApiInfo {
+    private final ApiIndex mIndex;
+
+    PackageApi(ApiIndex index) {
+      mIndex = index;
+    }
+
+    @Override
+    public ClassInfo findClass(String name) {
+      ClassInfo cl = super.findClass(name);
+      return cl != null ? cl : mIndex.findClass(name);
+    }
+
+    ClassInfo findOwnClass(String name) {
+      return super.findClass(name);
+    }
+  }
+
+  /** Carries a parse error out of a class lookup made while checking. */
+  private static class LoadException extends RuntimeException {
+    LoadException(ApiParseException cause) {
+      super(cause);
+    }
+  }
+}
@@ -46,30 +46,41 @@ class XmlApiFile extends DefaultHandler {
   private ClassInfo mCurrentClass;
   private AbstractMethodInfo mCurrentMethod;
   private Stack<ClassInfo> mClassScope = new Stack<ClassInfo>();
+  private ApiSnapshot.Recorder mRecorder;
   
   public static ApiInfo parseApi(InputStream xmlStream) throws ApiParseException {
+    return parseApi(xmlStream, null);
+  }
+
+  /**
+   * Like {@link #parseApi(InputStream)}, also reporting every element to {@code recorder} if it
+   * is not null.
+   */
+  static ApiInfo parseApi(InputStream xmlStream, ApiSnapshot.Recorder recorder)
+      throws ApiParseException {
     try {
       XMLReader xmlreader = XMLReaderFactory.createXMLReader();
       XmlApiFile handler = new XmlApiFile();
+      handler.mRecorder = recorder;
       xmlreader.setContentHandler(handler);
       xmlreader.setErrorHandler(handler);
       xmlreader.parse(new InputSource(xmlStream));
-      ApiInfo apiInfo = handler.getApi();
-      apiInfo.resolveSuperclasses();
-      apiInfo.resolveInterfaces();
-      return apiInfo;
+      return handler.finish();
     } catch (Exception e) {
       throw new ApiParseException("Error parsing API", e);
     }
   }
 
-  private XmlApiFile() {
+  XmlApiFile() {
     super();
     mApi = new ApiInfo();
   }
 
   @Override
   public void startElement(String uri, String localName, String qName, Attributes attributes) {
+    if (mRecorder != null) {
+      mRecorder.startElement(qName, attributes);
+    }
     if (qName.equals("package")) {
       mCurrentPackage =
           new PackageInfo(attributes.getValue("name"), SourcePositionInfo.fromXml(attributes
@@ -220,6 +231,9 @@ class XmlApiFile extends DefaultHandler {
 
   @Override
   public void endElement(String uri, String localName, String qName) {
+    if (mRecorder != null) {
+      mRecorder.endElement(qName);
+    }
     if (qName.equals("method")) {
       mCurrentClass.addMethod((MethodInfo) mCurrentMethod);
     } else if (qName.equals("constructor")) {
@@ -235,6 +249,13 @@ class XmlApiFile extends DefaultHandler {
   public ApiInfo getApi() {
     return mApi;
   }
+
+  /** Resolves the references between the classes read so far and returns the API. */
+  ApiInfo finish() {
+    mApi.resolveSuperclasses();
+    mApi.resolveInterfaces();
+    return mApi;
+  }
   
   private String qualifiedName(String pkg, String className, ClassInfo parent) {
     String parentQName = (parent != null) ? (parent.qualifiedName() + ".") : "";
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CommentTest extends TestCase {
+
+    public void testMainDescription() {
+        Comment comment = comment("First sentence. Second sentence.");
+        assertEquals(Arrays.asList("Text|First sentence. Second sentence.|Foo.java:9"),
+                describe(comment.tags()));
+        assertEquals(Arrays.asList("Text|First sentence.|Foo.java:9"),
+                describe(comment.briefTags()));
+        assertEquals(Arrays.asList(), describe(comment.blockTags()));
+    }
+
+    public void testLeadingWhitespace() {
+        Comment comment = comment(" \n\t First sentence. Second.\n @since 3\n");
+        assertEquals(Arrays.asList("Text|First sentence. Second.|Foo.java:6"),
+                describe(comment.tags()));
+        assertEquals(Arrays.asList("Text|First sentence.|Foo.java:6"),
+                describe(comment.briefTags()));
+        // The last block runs to the end of the text, trailing whitespace and all
+        assertEquals(Arrays.asList("@since|3\n|Foo.java:7"), describe(comment.blockTags()));
+    }
+
+    public void testOnlyBlockTags() {
+        Comment comment = comment("@since 3\n@version 2,\n  over two lines.");
+        assertEquals(Arrays.asList(), describe(comment.tags()));
+        assertEquals(Arrays.asList(), describe(comment.briefTags()));
+        assertEquals(Arrays.asList(
+                "@since|3|Foo.java:7",
+                "@version|2,\n  over two lines.|Foo.java:8"),
+                describe(comment.blockTags()));
+    }
+
+    public void testAtOnFirstCharacter() {
+        Comment comment = comment("@since 3. Really.");
+        assertEquals(Arrays.asList(), describe(comment.tags()));
+        assertEquals(Arrays.asList(), describe(comment.briefTags()));
+        assertEquals(Arrays.asList("@since|3. Really.|Foo.java:9"),
+                describe(comment.blockTags()));
+
+        comment = comment("@deprecated Use something else.");
+        assertTrue(comment.isDeprecated());
+        assertEquals(1, comment.deprecatedTags().length);
+        assertEquals(Arrays.asList(), describe(comment.tags()));
+    }
+
+    public void testPeriodBeforeTag() {
+        Comment comment = comment("Ends here.<p>Not here. Or here.");
+        assertEquals(Arrays.asList("Text|Ends here.|Foo.java:9"),
+                describe(comment.briefTags()));
+    }
+
+    public void testPeriodAtEnd() {
+        // A period that ends the text isn't followed by anything, so it doesn't end a sentence
+        Comment comment = comment("Only sentence.");
+        assertEquals(Arrays.asList("Text|Only sentence.|Foo.java:9"),
+                describe(comment.briefTags()));
+
+        comment = comment("Version 1.2 only.");
+        assertEquals(Arrays.asList("Text|Version 1.2 only.|Foo.java:9"),
+                describe(comment.briefTags()));
+    }
+
+    public void testAllWhitespace() {
+        // The last whitespace character is kept as the text, as it always has been
+        Comment comment = comment(" \t\n \n");
+        assertEquals(Arrays.asList("Text|\n|Foo.java:7"), describe(comment.tags()));
+        assertEquals(Arrays.asList("Text|\n|Foo.java:7"), describe(comment.briefTags()));
+        assertEquals(Arrays.asList(), describe(comment.blockTags()));
+
+        comment = comment("");
+        assertEquals(Arrays.asList(), describe(comment.tags()));
+        assertEquals(Arrays.asList(), describe(comment.blockTags()));
+    }
+
+    private static Comment comment(String text) {
+        return new Comment(text, null, new SourcePositionInfo("Foo.java", 10, 0));
+    }
+
+    private static List<String> describe(TagInfo[] tags) {
+        List<String> result = new ArrayList<String>();
+        for (TagInfo tag : tags) {
+            result.add(tag.name() + "|" + tag.text() + "|" + tag.position());
+        }
+        return result;
+    }
+}
@@ -19,12 +19,32 @@ package doclava;
 import com.google.doclava.Errors;
 import com.google.doclava.Errors.Error;
 import com.google.doclava.Errors.ErrorMessage;
+import com.google.doclava.Stubs;
 import com.google.doclava.apicheck.ApiCheck;
 import com.google.doclava.apicheck.ApiCheck.Report;
+import com.google.doclava.apicheck.ApiInfo;
+import com.google.doclava.apicheck.ApiParseException;
+import com.google.doclava.apicheck.ApiSnapshot;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 public class ApiCheckTest extends TestCase {
   /**
@@ -37,6 +57,18 @@ public class ApiCheckTest extends TestCase {
     }
   }
 
+  /** Files copied out of test/api, for tests that write next to them or change them. */
+  private File mTempDir;
+
+  public void tearDown() throws IOException {
+    if (mTempDir != null) {
+      for (File f : mTempDir.listFiles()) {
+        f.delete();
+      }
+      mTempDir.delete();
+    }
+  }
+
   public void testEquivalentApi() {
     String[] args = { "test/api/medium.xml", "test/api/medium.xml" };
     ApiCheck apiCheck = new ApiCheck();
@@ -465,4 +497,298 @@ public class ApiCheckTest extends TestCase {
     assertEquals(1, report.errors().size());
     assertEquals(Errors.CHANGED_CLASS, report.errors().iterator().next().error());
   }
+
+  public void testStreamingMatchesFullParse() {
+    List<String> errors = check("test/api/stream-old.txt", "test/api/stream-new.txt");
+    assertEquals(errors, check("-stream", "test/api/stream-old.txt", "test/api/stream-new.txt"));
+    assertEquals(Arrays.asList(
+        "test/api/stream-new.txt:1: error 2: Added package test.added",
+        "test/api/stream-new.txt:14: error 4: Added public method test.base.Base.stop()",
+        "test/api/stream-old.txt:28: error 9: Removed public method test.ignored.Ignored.ignored()",
+        "test/api/stream-old.txt:33: error 7: Removed package test.removed",
+        "exit 1"), errors);
+    // Derived.run() is still inherited from test.base.Base, which is in another package
+  }
+
+  public void testStreamingIgnorePackage() {
+    List<String> errors = check("-ignorePackage", "test.ignored",
+        "test/api/stream-old.txt", "test/api/stream-new.txt");
+    assertEquals(errors, check("-stream", "-ignorePackage", "test.ignored",
+        "test/api/stream-old.txt", "test/api/stream-new.txt"));
+    for (String error : errors) {
+      assertFalse(error, error.contains("test.ignored"));
+    }
+  }
+
+  public void testStreamingRejectsIdenticalMalformedPackage() {
+    // test.unparsed can't be parsed; it is byte-identical in both files, so it is never
+    // compared, but the file is still rejected just as a full parse rejects it
+    List<String> errors = check("test/api/stream-skip-old.txt", "test/api/stream-skip-new.txt");
+    assertEquals(Arrays.asList("exit 1"), errors);
+    assertEquals(errors,
+        check("-stream", "test/api/stream-skip-old.txt", "test/api/stream-skip-new.txt"));
+  }
+
+  public void testStreamingFallsBackForMalformedFile() {
+    List<String> errors = check("test/api/stream-malformed.txt", "test/api/stream-new.txt");
+    assertEquals(Arrays.asList("exit 1"), errors);
+    assertEquals(errors,
+        check("-stream", "test/api/stream-malformed.txt", "test/api/stream-new.txt"));
+  }
+
+  public void testStreamingFallsBackForXml() {
+    List<String> errors = check("test/api/simple.xml", "test/api/added-class.xml");
+    assertEquals(2, errors.size());
+    assertEquals(errors, check("-stream", "test/api/simple.xml", "test/api/added-class.xml"));
+  }
+
+  public void testChangedClassInUnchangedPackage() throws Exception {
+    List<String> errors = check("test/api/digest-old.txt", "test/api/digest-new.txt");
+    assertEquals(Arrays.asList(
+        "test/api/digest-new.txt:6: error 4: Added public method test.digest.Changed.added()",
+        "exit 1"), errors);
+    assertEquals(errors, check("-stream", "test/api/digest-old.txt", "test/api/digest-new.txt"));
+
+    ApiInfo oldApi = ApiCheck.parseApi("test/api/digest-old.txt");
+    ApiInfo newApi = ApiCheck.parseApi("test/api/digest-new.txt");
+    long reformatted = oldApi.getPackages().get("test.reformatted").apiDigest();
+    assertTrue(reformatted != 0);
+    assertEquals(reformatted, newApi.getPackages().get("test.reformatted").apiDigest());
+    assertTrue(oldApi.getPackages().get("test.digest").apiDigest()
+        != newApi.getPackages().get("test.digest").apiDigest());
+    assertEquals(oldApi.findClass("test.digest.Kept").apiDigest(),
+        newApi.findClass("test.digest.Kept").apiDigest());
+    assertTrue(oldApi.findClass("test.digest.Changed").apiDigest()
+        != newApi.findClass("test.digest.Changed").apiDigest());
+  }
+
+  public void testIdenticalFilesAreNotCompared() throws Exception {
+    // Neither file can be parsed, so a success means the members were never compared
+    String oldFile = copy("stream-malformed.txt", "old.txt");
+    String newFile = copy("stream-malformed.txt", "new.txt");
+    assertEquals(Arrays.asList("exit 0"), check(oldFile, newFile));
+    assertEquals(Arrays.asList("exit 0"), check("-stream", oldFile, newFile));
+  }
+
+  public void testDaemonResetsErrorLevels() throws Exception {
+    String request = "test/api/digest-old.txt test/api/digest-new.txt";
+    String added = "test/api/digest-new.txt:6: %s 4: Added public method test.digest.Changed.added()";
+    try (Daemon daemon = new Daemon()) {
+      assertEquals(Arrays.asList(String.format(added, "warning"), "exit 0"),
+          daemon.request(request));
+      assertEquals(Arrays.asList(String.format(added, "error"), "exit 1"),
+          daemon.request("-error 4 " + request));
+      assertEquals(Arrays.asList(String.format(added, "warning"), "exit 0"),
+          daemon.request(request));
+      assertEquals(Arrays.asList("exit 0"), daemon.request("-hide 4 " + request));
+      assertEquals(Arrays.asList(String.format(added, "warning"), "exit 0"),
+          daemon.request(request));
+    }
+  }
+
+  public void testDaemonReparsesChangedFiles() throws Exception {
+    String oldFile = copy("digest-old.txt");
+    String newFile = copy("digest-new.txt");
+    String request = "-error 4 " + oldFile + " " + newFile;
+    String added = newFile + ":6: error 4: Added public method test.digest.Changed.%s()";
+    Path path = new File(newFile).toPath();
+    try (Daemon daemon = new Daemon()) {
+      assertEquals(Arrays.asList(String.format(added, "added"), "exit 1"),
+          daemon.request(request));
+
+      // Same length and modification time: the cached API is still used
+      File file = path.toFile();
+      long modified = file.lastModified();
+      rewrite(path, "added", "addee");
+      assertTrue(file.setLastModified(modified));
+      assertEquals(Arrays.asList(String.format(added, "added"), "exit 1"),
+          daemon.request(request));
+
+      assertTrue(file.setLastModified(modified + 2000));
+      assertEquals(Arrays.asList(String.format(added, "addee"), "exit 1"),
+          daemon.request(request));
+
+      rewrite(path, "addee", "addedToo");
+      assertTrue(file.setLastModified(modified + 2000));
+      assertEquals(Arrays.asList(String.format(added, "addedToo"), "exit 1"),
+          daemon.request(request));
+    }
+  }
+
+  public void testDaemonRecoversFromFailedRequests() throws Exception {
+    String request = "test/api/digest-old.txt test/api/digest-new.txt";
+    List<String> expected = Arrays.asList(
+        "test/api/digest-new.txt:6: warning 4: Added public method test.digest.Changed.added()",
+        "exit 0");
+    try (Daemon daemon = new Daemon()) {
+      assertEquals(Arrays.asList("exit 2"), daemon.request("-error x " + request));
+      assertEquals(expected, daemon.request(request));
+      assertEquals(Arrays.asList("exit 1"),
+          daemon.request("test/api/stream-malformed.txt test/api/digest-new.txt"));
+      assertEquals(expected, daemon.request(request));
+      assertEquals(Arrays.asList("exit 2"), daemon.request("test/api/digest-old.txt"));
+      assertEquals(expected, daemon.request(request));
+    }
+  }
+
+  private static void rewrite(Path path, String from, String to) throws IOException {
+    String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    Files.write(path, text.replace(from, to).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** An {@link ApiCheck#serve} daemon running on its own thread. */
+  private static class Daemon implements AutoCloseable {
+    private final PrintStream mIn;
+    private final BufferedReader mOut;
+    private final Thread mThread;
+    private int mCode = -1;
+
+    Daemon() throws IOException {
+      PipedOutputStream in = new PipedOutputStream();
+      PipedInputStream serverIn = new PipedInputStream(in);
+      PipedInputStream out = new PipedInputStream();
+      PrintStream serverOut = new PrintStream(new PipedOutputStream(out), true, "UTF-8");
+      mIn = new PrintStream(in, true, "UTF-8");
+      mOut = new BufferedReader(new InputStreamReader(out, StandardCharsets.UTF_8));
+      mThread = new Thread(() -> {
+        mCode = new ApiCheck().serve(serverIn, serverOut);
+        serverOut.close();
+      });
+      mThread.start();
+    }
+
+    /** Sends one request, returning each line of its report up to and including its code. */
+    List<String> request(String line) throws IOException {
+      mIn.println(line);
+      List<String> result = new ArrayList<String>();
+      String reply;
+      do {
+        reply = mOut.readLine();
+        assertNotNull("daemon exited", reply);
+        result.add(reply);
+      } while (!reply.startsWith("exit "));
+      return result;
+    }
+
+    @Override
+    public void close() throws Exception {
+      mIn.println();
+      mThread.join(10000);
+      assertEquals(0, mCode);
+    }
+  }
+
+  /** Runs a check from a clean slate, returning each error it reported and then its code. */
+  private static List<String> check(String... args) {
+    Errors.clearErrors();
+    Report report = new ApiCheck().checkApi(args);
+    List<String> result = new ArrayList<String>();
+    for (ErrorMessage m : report.errors()) {
+      result.add(m.toString());
+    }
+    result.add("exit " + report.code());
+    return result;
+  }
+
+  public void testSnapshotOfTextFile() throws Exception {
+    checkSnapshotRoundTrip("stream-old.txt");
+  }
+
+  public void testSnapshotOfXmlFile() throws Exception {
+    checkSnapshotRoundTrip("medium.xml");
+  }
+
+  public void testSnapshotWithBadStringCount() throws Exception {
+    String file = copy("stream-old.txt");
+    byte[] snapshot = makeSnapshot(file);
+    byte[] corrupt = snapshot.clone();
+    // the string count follows the magic, version, hash and kind
+    ByteBuffer.wrap(corrupt).putInt(4 + 4 + 20 + 1, -1);
+    checkSnapshotReplaced(file, snapshot, corrupt);
+  }
+
+  public void testSnapshotWithBadStringIndex() throws Exception {
+    String file = copy("stream-old.txt");
+    byte[] snapshot = makeSnapshot(file);
+    byte[] corrupt = snapshot.clone();
+    ByteBuffer.wrap(corrupt).putInt(eventsOffset(snapshot), Integer.MAX_VALUE);
+    checkSnapshotReplaced(file, snapshot, corrupt);
+  }
+
+  public void testSnapshotWithBadTokens() throws Exception {
+    String file = copy("stream-old.txt");
+    byte[] snapshot = makeSnapshot(file);
+    byte[] corrupt = snapshot.clone();
+    // the file starts with "package", which is string 0; make it start with another string
+    ByteBuffer.wrap(corrupt).putInt(eventsOffset(snapshot), 1);
+    checkSnapshotReplaced(file, snapshot, corrupt);
+  }
+
+  /** Checks that a new snapshot, and then loading it, give the same API as parsing the file. */
+  private void checkSnapshotRoundTrip(String fixture) throws Exception {
+    String file = copy(fixture);
+    String parsed = toXml(ApiCheck.parseApi(file));
+    File snapshot = new File(file + ApiSnapshot.SUFFIX);
+
+    assertEquals(parsed, toXml(ApiSnapshot.parseApi(file)));
+    assertTrue(snapshot.isFile());
+
+    // a snapshot that loads is not written again
+    assertTrue(snapshot.setLastModified(0));
+    assertEquals(parsed, toXml(ApiSnapshot.parseApi(file)));
+    assertEquals(0, snapshot.lastModified());
+  }
+
+  /**
+   * Replaces the snapshot of {@code file} with {@code corrupt}, and checks that the file is
+   * parsed instead and the snapshot written again.
+   */
+  private void checkSnapshotReplaced(String file, byte[] snapshot, byte[] corrupt)
+      throws Exception {
+    Path path = new File(file + ApiSnapshot.SUFFIX).toPath();
+    Files.write(path, corrupt);
+    assertEquals(toXml(ApiCheck.parseApi(file)), toXml(ApiSnapshot.parseApi(file)));
+    assertTrue(Arrays.equals(snapshot, Files.readAllBytes(path)));
+  }
+
+  private byte[] makeSnapshot(String file) throws Exception {
+    ApiSnapshot.parseApi(file);
+    return Files.readAllBytes(new File(file + ApiSnapshot.SUFFIX).toPath());
+  }
+
+  /** Returns where the events of {@code snapshot} start, after its string table. */
+  private static int eventsOffset(byte[] snapshot) {
+    ByteBuffer buf = ByteBuffer.wrap(snapshot);
+    buf.position(4 + 4 + 20 + 1);
+    int strings = buf.getInt();
+    for (int i = 0; i < strings; i++) {
+      int length = buf.getInt();
+      buf.position(buf.position() + length);
+    }
+    // skip the event count
+    return buf.position() + 4;
+  }
+
+  private static String toXml(ApiInfo api) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintStream stream = new PrintStream(out);
+    Stubs.writeXml(stream, api.getPackages().values(), false);
+    stream.flush();
+    return out.toString();
+  }
+
+  /** Copies {@code fixture} from test/api into a temporary directory, returning its path. */
+  private String copy(String fixture) throws IOException {
+    return copy(fixture, fixture);
+  }
+
+  private String copy(String fixture, String name) throws IOException {
+    if (mTempDir == null) {
+      mTempDir = Files.createTempDirectory("apicheck").toFile();
+    }
+    File copy = new File(mTempDir, name);
+    Files.copy(new File("test/api", fixture).toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    return copy.getPath();
+  }
 }